@@ -0,0 +1,69 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker.bench;
+
+import java.util.Random;
+
+import edu.vub.at.nfcpoker.Card;
+import edu.vub.at.nfcpoker.CardSet;
+import edu.vub.at.nfcpoker.HandRank;
+
+// Fixed-seed inputs shared by the benchmarks, so runs are comparable.
+final class Deals {
+	static final int COUNT = 1024;    // power of two, benchmarks cycle with (i & MASK)
+	static final int MASK = COUNT - 1;
+
+	enum Kind {
+		// uniformly random cards
+		RANDOM,
+		// only pools that hold a flush or a straight, the longest evaluation paths
+		FLUSH_STRAIGHT
+	}
+
+	private Deals() {}
+
+	// count distinct cards, rejected until they match kind when there are 5 or more.
+	static Card[] deal(Random rnd, int count, Kind kind) {
+		while (true) {
+			Card[] cards = new Card[count];
+			long used = 0;
+			for (int i = 0; i < count; i++) {
+				Card c;
+				do {
+					c = Card.get(rnd.nextInt(52));
+				} while ((used & CardSet.bit(c)) != 0);
+				used |= CardSet.bit(c);
+				cards[i] = c;
+			}
+			if (kind == Kind.RANDOM || count < 5)
+				return cards;
+			int category = HandRank.category(HandRank.evaluate(used));
+			if (category == HandRank.STRAIGHT || category == HandRank.FLUSH || category == HandRank.STRAIGHT_FLUSH)
+				return cards;
+		}
+	}
+
+	static Card[][] deals(long seed, int count, Kind kind) {
+		Random rnd = new Random(seed);
+		Card[][] ret = new Card[COUNT][];
+		for (int i = 0; i < COUNT; i++)
+			ret[i] = deal(rnd, count, kind);
+		return ret;
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.vub.at.nfcpoker.Card;
+import edu.vub.at.nfcpoker.CardSet;
+import edu.vub.at.nfcpoker.Deck;
+import edu.vub.at.nfcpoker.XorShiftRandom;
+
+// Dealing one hand of hold'em: 2 hole cards per player and 5 board cards.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeckBenchmark {
+
+	@Param({ "2", "6", "10" })
+	public int players;
+
+	private Deck reused;
+
+	@Setup
+	public void setup() {
+		reused = new Deck(new CardSet(), new XorShiftRandom(10));
+	}
+
+	@Benchmark
+	public Card dealHand() {
+		return deal(new Deck());
+	}
+
+	// One deck for all hands, as PokerGame and the equity simulation do.
+	@Benchmark
+	public Card dealHandReused() {
+		reused.shuffle();
+		Card last = null;
+		for (int i = 0; i < 5 + 2 * players; i++)
+			last = reused.drawFromDeck();
+		return last;
+	}
+
+	private Card deal(Deck deck) {
+		Card last = null;
+		for (int p = 0; p < players; p++)
+			last = deck.drawCards(2)[1];
+		last = deck.drawCards(3)[2];
+		last = deck.drawCards(1)[0];
+		last = deck.drawCards(1)[0];
+		return last;
+	}
+
+	@Benchmark
+	public Deck shuffle() {
+		return new Deck();
+	}
+}
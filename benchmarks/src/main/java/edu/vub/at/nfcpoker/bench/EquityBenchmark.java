@@ -0,0 +1,88 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.vub.at.nfcpoker.Card;
+import edu.vub.at.nfcpoker.CardSet;
+import edu.vub.at.nfcpoker.Equity;
+import edu.vub.at.nfcpoker.ui.tools.CardScoreUtility;
+
+// The client prediction per street, computed (CardScoreUtility.computeEquity) and
+// through the equity cache (CardScoreUtility.evaluateHand).
+// Preflop is a table lookup, the flop is simulated (bounded by its time budget),
+// the turn and river are enumerated while the table is small enough.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EquityBenchmark {
+
+	@Param({ "0", "3", "4", "5" })
+	public int boardCards;
+
+	@Param({ "2", "3", "6" })
+	public int players;
+
+	private CardSet[] boards;
+	private CardSet[] holeCards;
+	private int next;
+
+	@Setup
+	public void setup() {
+		Random rnd = new Random(4);
+		boards = new CardSet[Deals.COUNT];
+		holeCards = new CardSet[Deals.COUNT];
+		for (int i = 0; i < Deals.COUNT; i++) {
+			Card[] cards = Deals.deal(rnd, 2 + boardCards, Deals.Kind.RANDOM);
+			holeCards[i] = CardSet.of(cards[0], cards[1]);
+			boards[i] = new CardSet();
+			for (int c = 2; c < cards.length; c++)
+				boards[i].add(cards[c]);
+		}
+	}
+
+	@Benchmark
+	public Equity computeEquity() throws InterruptedException {
+		int i = next++ & Deals.MASK;
+		return CardScoreUtility.computeEquity(boards[i], holeCards[i], players, null);
+	}
+
+	@Benchmark
+	public Equity evaluateHandCached() throws InterruptedException {
+		int i = next++ & Deals.MASK;
+		return CardScoreUtility.evaluateHand(boards[i], holeCards[i], players);
+	}
+}
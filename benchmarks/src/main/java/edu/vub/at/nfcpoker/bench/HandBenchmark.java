@@ -0,0 +1,93 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.vub.at.nfcpoker.Card;
+import edu.vub.at.nfcpoker.CardSet;
+import edu.vub.at.nfcpoker.Hand;
+import edu.vub.at.nfcpoker.HandRank;
+
+// Hand evaluation on its own: random pools and flush/straight-heavy pools.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandBenchmark {
+
+	@Param({ "RANDOM", "FLUSH_STRAIGHT" })
+	public String kind;
+
+	private Card[][] fives;
+	private Card[][] sevens;
+	private long[] sevenBits;
+	private CardSet[] sevenSets;
+	private int next;
+
+	@Setup
+	public void setup() {
+		fives = Deals.deals(5, 5, Deals.Kind.valueOf(kind));
+		sevens = Deals.deals(7, 7, Deals.Kind.valueOf(kind));
+		sevenBits = new long[Deals.COUNT];
+		sevenSets = new CardSet[Deals.COUNT];
+		for (int i = 0; i < Deals.COUNT; i++) {
+			sevenBits[i] = CardSet.bits(sevens[i]);
+			sevenSets[i] = new CardSet(sevenBits[i]);
+		}
+	}
+
+	// Hand(Card[]) of five cards
+	@Benchmark
+	public Hand constructHand() {
+		return new Hand(fives[next++ & Deals.MASK]);
+	}
+
+	// Best hand out of seven cards, with the five cards picked out for display
+	@Benchmark
+	public Hand makeBestHand() {
+		return Hand.makeBestHand(sevenSets[next++ & Deals.MASK]);
+	}
+
+	// Strength only, as used at showdown and by the equity engine
+	@Benchmark
+	public int evaluateSeven() {
+		return HandRank.evaluate(sevenBits[next++ & Deals.MASK]);
+	}
+
+	// Strength of seven Card objects, including building the bit set
+	@Benchmark
+	public int evaluateSevenCards() {
+		return HandRank.evaluate(sevens[next++ & Deals.MASK]);
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.vub.at.nfcpoker.BitHandEvaluator;
+import edu.vub.at.nfcpoker.Card;
+import edu.vub.at.nfcpoker.CardSet;
+import edu.vub.at.nfcpoker.FiveCardHandEvaluator;
+import edu.vub.at.nfcpoker.HandEvaluator;
+import edu.vub.at.nfcpoker.SevenCardHandEvaluator;
+
+// The HandEvaluator backends on 5 and 7 cards.
+// The 7-card table is generated in the temp directory the first time.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandEvaluatorBenchmark {
+
+	@Param({ "bit", "five", "seven" })
+	public String backend;
+
+	@Param({ "RANDOM", "FLUSH_STRAIGHT" })
+	public String kind;
+
+	private HandEvaluator evaluator;
+	private long[] fives;
+	private long[] sevens;
+	private int next;
+
+	@Setup
+	public void setup() throws IOException {
+		if (backend.equals("bit"))
+			evaluator = new BitHandEvaluator();
+		else if (backend.equals("five"))
+			evaluator = new FiveCardHandEvaluator();
+		else
+			evaluator = SevenCardHandEvaluator.open(new File(System.getProperty("java.io.tmpdir"), SevenCardHandEvaluator.FILE_NAME));
+		fives = bits(Deals.deals(5, 5, Deals.Kind.valueOf(kind)));
+		sevens = bits(Deals.deals(7, 7, Deals.Kind.valueOf(kind)));
+	}
+
+	private static long[] bits(Card[][] deals) {
+		long[] ret = new long[deals.length];
+		for (int i = 0; i < deals.length; i++)
+			ret[i] = CardSet.bits(deals[i]);
+		return ret;
+	}
+
+	@Benchmark
+	public int evaluateFive() {
+		return evaluator.evaluate(fives[next++ & Deals.MASK]);
+	}
+
+	@Benchmark
+	public int evaluateSeven() {
+		return evaluator.evaluate(sevens[next++ & Deals.MASK]);
+	}
+}
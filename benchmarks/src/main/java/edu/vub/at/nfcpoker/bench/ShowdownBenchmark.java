@@ -0,0 +1,87 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.vub.at.nfcpoker.Card;
+import edu.vub.at.nfcpoker.CardSet;
+import edu.vub.at.nfcpoker.Showdown;
+
+// End of a hand: one board and the hole cards of every remaining player.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShowdownBenchmark {
+
+	@Param({ "2", "6", "10" })
+	public int players;
+
+	@Param({ "RANDOM", "FLUSH_STRAIGHT" })
+	public String kind;
+
+	private CardSet[] boards;
+	private long[][] holeCards;
+	private int next;
+
+	@Setup
+	public void setup() {
+		Random rnd = new Random(8);
+		boards = new CardSet[Deals.COUNT];
+		holeCards = new long[Deals.COUNT][players];
+		for (int i = 0; i < Deals.COUNT; i++) {
+			// The board decides whether flushes and straights are around.
+			long used = CardSet.bits(Deals.deal(rnd, 5, Deals.Kind.valueOf(kind)));
+			boards[i] = new CardSet(used);
+			for (int p = 0; p < players; p++) {
+				long hole = 0;
+				while (Long.bitCount(hole) < 2) {
+					long bit = CardSet.bit(Card.get(rnd.nextInt(52)));
+					if ((used & bit) == 0) {
+						hole |= bit;
+						used |= bit;
+					}
+				}
+				holeCards[i][p] = hole;
+			}
+		}
+	}
+
+	@Benchmark
+	public Showdown showdown() {
+		int i = next++ & Deals.MASK;
+		return Showdown.evaluate(boards[i], holeCards[i]);
+	}
+}
@@ -27,7 +27,6 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
 
 import android.net.DhcpInfo;
 import android.net.wifi.WifiManager;
@@ -36,7 +35,9 @@ import android.util.Log;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryonet.Connection;
 
+import edu.vub.at.nfcpoker.Clock;
 import edu.vub.at.nfcpoker.comm.Message.ClientAction;
 
 public class CommLib {
@@ -47,8 +48,7 @@ public class CommLib {
 	private static final int DISCOVERY_TIMEOUT = 10000;
 	private static final int EXPORT_INTERVAL = 2000;
 	
-	@SuppressWarnings("rawtypes")
-	public static Map<UUID, Future> futures = new HashMap<UUID, Future>();
+	public static final FutureRegistry futures = new FutureRegistry(Clock.SYSTEM);
 	
 	private static Map<String,String> wifiConnections = new HashMap<String, String>();
 	static {
@@ -97,9 +97,9 @@ public class CommLib {
 	public static CommLibConnectionInfo discover(Class<?> klass, String broadcastAddress) throws IOException {
 		final String targetClass = klass.getCanonicalName();
 		Kryo k = new Kryo();
-		k.setRegistrationRequired(false);
+		k.setRegistrationRequired(true);
+		k.register(String[].class);
 		k.register(CommLibConnectionInfo.class);
-		k.register(UUID.class, new UUIDSerializer());
 		
 		DatagramSocket ds = new DatagramSocket(DISCOVERY_PORT, InetAddress.getByName(broadcastAddress));
 		ds.setBroadcast(true);
@@ -124,9 +124,9 @@ public class CommLib {
 	
 	public static void export(CommLibConnectionInfo clci, String broadcastAddress) throws IOException, InterruptedException {
 		Kryo k = new Kryo();
-		k.setRegistrationRequired(false);
+		k.setRegistrationRequired(true);
+		k.register(String[].class);
 		k.register(CommLibConnectionInfo.class);
-		k.register(UUID.class, new UUIDSerializer());
 		Output o = new Output(1024);
 		k.writeObject(o, clci);
 		final byte[] buf = o.toBytes();
@@ -145,19 +145,12 @@ public class CommLib {
 		}
 	}
 	
-	public static Future<ClientAction> createFuture() {
-		Future<ClientAction> f = new Future<ClientAction>(null);
-		futures.put(f.getFutureId(), f);
-		return f;
+	// A future for an answer from c, forgotten after ttlMillis (0 for never)
+	public static Future<ClientAction> createFuture(Connection c, long ttlMillis) {
+		return futures.create(c, ttlMillis);
 	}
 
-	public static void resolveFuture(UUID futureId, Object futureValue) {
-		@SuppressWarnings("unchecked")
-		Future<Object> f = futures.remove(futureId);
-		if (f == null) {
-//			Log.w("wePoker - CommLib", "Future null!");
-			return;
-		}
-		f.resolve(futureValue);	
+	public static void resolveFuture(Connection c, int futureId, Object futureValue) {
+		futures.resolve(c, futureId, futureValue);
 	}
 }
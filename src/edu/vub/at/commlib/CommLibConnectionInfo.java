@@ -20,12 +20,11 @@
 package edu.vub.at.commlib;
 
 import java.io.IOException;
-import java.util.UUID;
-
-import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryonet.Client;
 import com.esotericsoftware.kryonet.Listener;
 
+import edu.vub.at.nfcpoker.comm.Protocol;
+
 public class CommLibConnectionInfo {
 	public String serverType_;
 	public String[] extra_;
@@ -57,9 +56,7 @@ public class CommLibConnectionInfo {
 	public static Client connect(String ipAddress, int port, Listener listener) throws IOException {
 		Client ret = new Client();
 		ret.start();
-		Kryo k = ret.getKryo();
-		k.setRegistrationRequired(false);
-		k.register(UUID.class, new UUIDSerializer());
+		Protocol.register(ret.getKryo());
 		if (listener != null)
 			ret.addListener(listener);
 		ret.connect(5000, ipAddress, port);
@@ -19,64 +19,275 @@
 
 package edu.vub.at.commlib;
 
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.util.Log;
 
+import com.esotericsoftware.kryonet.Connection;
+
+// A value that arrives later, usually the answer to a message sent to the other end
+// of a connection. It is resolved once; later resolutions are ignored.
+// Listeners run on the thread that resolves the future, or on the executor they were
+// added with, and listeners added after the fact run right away. null is a valid value.
+// A future can also fail (resolveFailure): get() then throws, and the futures derived
+// from it with thenApply, thenCompose, anyOf and allOf fail too. Listeners only hear of values.
 public class Future<T> {
 	public interface FutureListener<T> {
 		void resolve(T value);
 	}
-	
+
+	// What thenApply and thenCompose do with the value
+	public interface Function<A, R> {
+		R apply(A value);
+	}
+
 	public Future() {
 		
 	}
 	
 	public Future(FutureListener<T> fl) {
-		listener = fl;
+		if (fl != null)
+			addListener(fl);
 	}
 	
-	UUID id = UUID.randomUUID();
-	FutureListener<T> listener;
-	T value;
+	// Set by the FutureRegistry the future is created with
+	int id;
+	Connection connection;
+	long expires;
+
+	private volatile boolean resolved;
+	private volatile T value;
+	private volatile Throwable failure;
+	// Guarded by this, only until resolved
+	private FutureListener<? super T> listener;
+	private List<FutureListener<? super T>> moreListeners;
+	private CountDownLatch waiters;
 	
 	public void resolve(T value) {
-		this.value = value;
-		if (listener != null) {
-			listener.resolve(value);
+		complete(value, null);
+	}
+
+	// Resolves the future with a failure instead of a value
+	public void resolveFailure(Throwable cause) {
+		complete(null, cause);
+	}
+
+	private void complete(T value, Throwable cause) {
+		FutureListener<? super T> first;
+		List<FutureListener<? super T>> more;
+		synchronized (this) {
+			if (resolved)
+				return;
+			this.value = value;
+			this.failure = cause;
+			resolved = true;
+			first = listener;
+			more = moreListeners;
 			listener = null;
+			moreListeners = null;
+			if (waiters != null)
+				waiters.countDown();
+		}
+		if (first != null)
+			notify(first, value, cause);
+		if (more != null) {
+			for (FutureListener<? super T> l : more)
+				notify(l, value, cause);
+		}
+	}
+
+	private static <T> void notify(FutureListener<? super T> l, T value, Throwable failure) {
+		try {
+			if (failure == null)
+				l.resolve(value);
+			else if (l instanceof Derived)
+				((Derived<?>) l).failed(failure);
+		} catch (RuntimeException e) {
+			Log.e("wePoker - Future", "Listener failed", e);
+		}
+	}
+
+	// Listens for the future derived from this one, and passes a failure on to it
+	private static abstract class Derived<T> implements FutureListener<T> {
+		private final Future<?> derived;
+
+		Derived(Future<?> derived) {
+			this.derived = derived;
+		}
+
+		void failed(Throwable cause) {
+			derived.resolveFailure(cause);
 		}
 	}
 	
 	public boolean isResolved() {
-		return value != null;
+		return resolved;
+	}
+
+	// Runs l with the value once it is there
+	public void addListener(FutureListener<? super T> l) {
+		synchronized (this) {
+			if (!resolved) {
+				if (listener == null) {
+					listener = l;
+				} else {
+					if (moreListeners == null)
+						moreListeners = new ArrayList<FutureListener<? super T>>(2);
+					moreListeners.add(l);
+				}
+				return;
+			}
+		}
+		notify(l, value, failure);
+	}
+
+	// Runs l with the value on executor once it is there
+	public void addListener(final FutureListener<? super T> l, final Executor executor) {
+		addListener(new FutureListener<T>() {
+			@Override
+			public void resolve(final T value) {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						l.resolve(value);
+					}
+				});
+			}
+		});
+	}
+
+	// Kept for older callers, the listener is added to those there are
+	public void setFutureListener(FutureListener<T> fl) {
+		addListener(fl);
 	}
 	
-	public synchronized T get() throws InterruptedException {
-		if (value != null)
-			return value;
-		setFutureListener(new FutureListener<T>() {
+	// Throws an ExecutionException with the cause if the future failed
+	public T get() throws InterruptedException, ExecutionException {
+		latch().await();
+		return getValue();
+	}
+
+	public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (!latch().await(timeout, unit))
+			throw new TimeoutException();
+		return getValue();
+	}
+
+	private T getValue() throws ExecutionException {
+		if (failure != null)
+			throw new ExecutionException(failure);
+		return value;
+	}
+
+	private synchronized CountDownLatch latch() {
+		if (waiters == null)
+			waiters = new CountDownLatch(resolved ? 0 : 1);
+		return waiters;
+	}
+
+	// A future for f applied to the value of this one, failed if f throws
+	public <R> Future<R> thenApply(final Function<? super T, ? extends R> f) {
+		final Future<R> result = new Future<R>();
+		addListener(new Derived<T>(result) {
 			@Override
 			public void resolve(T value) {
-				synchronized (Future.this) {
-					Future.this.notify();
+				R r;
+				try {
+					r = f.apply(value);
+				} catch (RuntimeException e) {
+					result.resolveFailure(e);
+					return;
 				}
+				result.resolve(r);
 			}
 		});
-		try {
-			this.wait();
-		} catch (InterruptedException e) {
-			Log.d("wePoker - Future", "Future was interrupted in get()");
-			throw e;
+		return result;
+	}
+
+	// A future for the value of the future f returns for the value of this one,
+	// failed if f throws or returns null
+	public <R> Future<R> thenCompose(final Function<? super T, Future<R>> f) {
+		final Future<R> result = new Future<R>();
+		addListener(new Derived<T>(result) {
+			@Override
+			public void resolve(T value) {
+				Future<R> next;
+				try {
+					next = f.apply(value);
+				} catch (RuntimeException e) {
+					result.resolveFailure(e);
+					return;
+				}
+				if (next == null) {
+					result.resolveFailure(new NullPointerException("thenCompose function returned null"));
+					return;
+				}
+				next.addListener(new Derived<R>(result) {
+					@Override
+					public void resolve(R value) {
+						result.resolve(value);
+					}
+				});
+			}
+		});
+		return result;
+	}
+
+	// Resolved with the first value any of futures is resolved with, or failed if that one failed
+	public static <T> Future<T> anyOf(List<? extends Future<? extends T>> futures) {
+		final Future<T> result = new Future<T>();
+		for (Future<? extends T> f : futures) {
+			f.addListener(new Derived<T>(result) {
+				@Override
+				public void resolve(T value) {
+					result.resolve(value);
+				}
+			});
 		}
-		return value;
+		return result;
 	}
-	
-	public void setFutureListener(FutureListener<T> fl) {
-		listener = fl;
+
+	// Resolved with the values of all futures, in order, once they are all there.
+	// Fails as soon as one of them fails.
+	public static <T> Future<List<T>> allOf(List<? extends Future<? extends T>> futures) {
+		final Future<List<T>> result = new Future<List<T>>();
+		final int n = futures.size();
+		if (n == 0) {
+			result.resolve(new ArrayList<T>());
+			return result;
+		}
+		final List<T> values = new ArrayList<T>(n);
+		for (int i = 0; i < n; i++)
+			values.add(null);
+		final AtomicInteger missing = new AtomicInteger(n);
+		for (int i = 0; i < n; i++) {
+			final int index = i;
+			futures.get(i).addListener(new Derived<T>(result) {
+				@Override
+				public void resolve(T value) {
+					synchronized (values) {
+						values.set(index, value);
+					}
+					if (missing.decrementAndGet() == 0) {
+						synchronized (values) {
+							result.resolve(values);
+						}
+					}
+				}
+			});
+		}
+		return result;
 	}
 	
-	public UUID getFutureId() {
+	// Numbers the futures of one connection, 0 for futures without one
+	public int getFutureId() {
 		return id;
 	}
 
@@ -0,0 +1,179 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package edu.vub.at.commlib;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.esotericsoftware.kryonet.Connection;
+
+import edu.vub.at.nfcpoker.Clock;
+
+// The futures waiting for an answer from the other end of a connection.
+// Every connection has its own numbering and its own lock, so tables only
+// contend for the futures of a single player. A future that is not resolved
+// within its time to live is forgotten, and so are all futures of a
+// connection that is closed.
+public class FutureRegistry {
+
+	// How often all connections are checked for expired futures
+	private static final long SWEEP_INTERVAL_MILLIS = 10000;
+
+	private static final class Slot {
+		// Guarded by this
+		int lastId;
+		final Map<Integer, Future<?>> pending = new HashMap<Integer, Future<?>>();
+	}
+
+	private final Clock clock;
+	private final ConcurrentMap<Connection, Slot> slots = new ConcurrentHashMap<Connection, Slot>();
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private final AtomicLong expired = new AtomicLong();
+	private final AtomicBoolean sweeping = new AtomicBoolean();
+	private volatile long nextSweep;
+
+	public FutureRegistry(Clock clock) {
+		this.clock = clock;
+	}
+
+	// A future to be resolved by an answer from c. ttlMillis 0 waits forever.
+	public <T> Future<T> create(Connection c, long ttlMillis) {
+		long now = clock.currentTimeMillis();
+		Future<T> f = new Future<T>();
+		f.connection = c;
+		f.expires = ttlMillis == 0 ? Long.MAX_VALUE : now + ttlMillis;
+		Slot slot = slots.get(c);
+		if (slot == null) {
+			Slot newSlot = new Slot();
+			slot = slots.putIfAbsent(c, newSlot);
+			if (slot == null)
+				slot = newSlot;
+		}
+		synchronized (slot) {
+			sweep(slot, now);
+			// 0 is never used, messages use it for 'no future'
+			if (++slot.lastId == 0)
+				slot.lastId = 1;
+			f.id = slot.lastId;
+			slot.pending.put(f.id, f);
+		}
+		outstanding.incrementAndGet();
+		if (now >= nextSweep && sweeping.compareAndSet(false, true)) {
+			nextSweep = now + SWEEP_INTERVAL_MILLIS;
+			for (Slot s : slots.values()) {
+				synchronized (s) {
+					sweep(s, now);
+				}
+			}
+			sweeping.set(false);
+		}
+		return f;
+	}
+
+	public Future<?> get(Connection c, int id) {
+		Slot slot = slots.get(c);
+		if (slot == null)
+			return null;
+		synchronized (slot) {
+			return slot.pending.get(id);
+		}
+	}
+
+	// Resolves the future numbered id of c, false when there is none (any more)
+	@SuppressWarnings("unchecked")
+	public boolean resolve(Connection c, int id, Object value) {
+		Slot slot = slots.get(c);
+		if (slot == null)
+			return false;
+		Future<Object> f;
+		synchronized (slot) {
+			f = (Future<Object>) slot.pending.remove(id);
+		}
+		if (f == null)
+			return false;
+		outstanding.decrementAndGet();
+		f.resolve(value);
+		return true;
+	}
+
+	// Resolves f on behalf of its connection, an answer that arrives later is ignored
+	public boolean resolve(Future<?> f, Object value) {
+		if (f.connection == null)
+			return false;
+		return resolve(f.connection, f.id, value);
+	}
+
+	// Forgets f without resolving it, an answer that arrives later is ignored
+	public boolean cancel(Future<?> f) {
+		if (f.connection == null)
+			return false;
+		Slot slot = slots.get(f.connection);
+		if (slot == null)
+			return false;
+		synchronized (slot) {
+			if (slot.pending.get(f.id) != f)
+				return false;
+			slot.pending.remove(f.id);
+		}
+		outstanding.decrementAndGet();
+		return true;
+	}
+
+	// Forgets all futures of c, for connections that are closed
+	public void remove(Connection c) {
+		Slot slot = slots.remove(c);
+		if (slot != null) {
+			synchronized (slot) {
+				outstanding.addAndGet(-slot.pending.size());
+				slot.pending.clear();
+			}
+		}
+	}
+
+	public int getOutstanding() {
+		return outstanding.get();
+	}
+
+	public long getExpired() {
+		return expired.get();
+	}
+
+	private void sweep(Slot slot, long now) {
+		Iterator<Future<?>> it = slot.pending.values().iterator();
+		while (it.hasNext()) {
+			if (it.next().expires <= now) {
+				it.remove();
+				outstanding.decrementAndGet();
+				expired.incrementAndGet();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return outstanding.get() + " futures outstanding, " + expired.get() + " expired";
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker;
+
+// HandRank as a HandEvaluator: no tables at all, only bit operations on the suit masks.
+public class BitHandEvaluator implements HandEvaluator {
+
+	@Override
+	public int evaluate(long cards) {
+		return HandRank.evaluate(cards);
+	}
+
+	// Keeps the suit masks of the board, every hand only adds its own two cards to them
+	@Override
+	public PreparedBoard prepareBoard(long board) {
+		final int b0 = CardSet.suitMask(board, 0), b1 = CardSet.suitMask(board, 1);
+		final int b2 = CardSet.suitMask(board, 2), b3 = CardSet.suitMask(board, 3);
+		return new PreparedBoard() {
+			@Override
+			public int evaluate(long h) {
+				return HandRank.evaluate(b0 | CardSet.suitMask(h, 0), b1 | CardSet.suitMask(h, 1),
+				                         b2 | CardSet.suitMask(h, 2), b3 | CardSet.suitMask(h, 3));
+			}
+		};
+	}
+
+	@Override
+	public long getTableSize() {
+		return 0;
+	}
+
+	@Override
+	public String toString() {
+		return "bit evaluator";
+	}
+}
@@ -21,20 +21,35 @@ package edu.vub.at.nfcpoker;
 
 //From http://www.dreamincode.net/forums/topic/116864-how-to-make-a-poker-game-in-java/
 
-public class Card {
-	public short rank, suit;
+public final class Card {
+	public final short rank, suit;
 
 	private static String[] suits = { "hearts", "spades", "diamonds", "clubs" };
 	private static String[] ranks  = { "a", "2", "3", "4", "5", "6", "7", "8", "9", "10", "j", "q", "k" };
 
+	// All 52 cards, indexed by suit * 13 + rank. Cards are never created elsewhere.
+	private static final Card[] cards = new Card[52];
+	static {
+		for (short suit=0; suit<=3; suit++) {
+			for (short rank=0; rank<=12; rank++) {
+				cards[suit * 13 + rank] = new Card(suit, rank);
+			}
+		}
+	}
+
 	public static String rankAsString( int __rank ) {
 		return ranks[__rank];
 	}
-	
-	// For cryo
-	Card() {}
 
-	public Card(short suit, short rank) {
+	public static Card get(int index) {
+		return cards[index];
+	}
+
+	public static Card get(int suit, int rank) {
+		return cards[suit * 13 + rank];
+	}
+
+	private Card(short suit, short rank) {
 		this.rank=rank;
 		this.suit=suit;
 	}
@@ -51,5 +66,8 @@ public class Card {
 	public short getSuit() {
 		return suit;
 	}
-}
 
+	public int getIndex() {
+		return suit * 13 + rank;
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package edu.vub.at.nfcpoker;
+
+// A set of cards packed in one long.
+// Every suit gets 16 bits; bit (suit * 16 + i) is the card of that suit with
+// HandRank rank index i (0 = deuce, ..., 12 = ace), so suitMask() can be fed
+// to HandRank.evaluate as is.
+
+public final class CardSet {
+	public static final int SUIT_BITS = 16;
+	public static final long RANK_MASK = 0x1FFF;
+
+	private static final Card[] bitToCard = new Card[64];
+	private static final long[] indexToBit = new long[52];
+	static {
+		for (int i = 0; i < 52; i++) {
+			Card c = Card.get(i);
+			bitToCard[bitIndex(c)] = c;
+			indexToBit[i] = bit(c);
+		}
+	}
+
+	private long bits;
+
+	public CardSet() {}
+
+	public CardSet(long bits) {
+		this.bits = bits;
+	}
+
+	public static CardSet of(Card... cards) {
+		return new CardSet(bits(cards));
+	}
+
+	public static long bits(Card... cards) {
+		long ret = 0;
+		for (int i = 0; i < cards.length; i++)
+			ret |= bit(cards[i]);
+		return ret;
+	}
+
+	public static int bitIndex(Card c) {
+		return c.getSuit() * SUIT_BITS + HandRank.rankIndex(c.getRank());
+	}
+
+	public static long bit(Card c) {
+		return 1L << bitIndex(c);
+	}
+
+	// Same as bit(Card.get(cardIndex)), without looking at the card.
+	public static long bitOfIndex(int cardIndex) {
+		return indexToBit[cardIndex];
+	}
+
+	public static Card cardAt(int bitIndex) {
+		return bitToCard[bitIndex];
+	}
+
+	public long getBits() {
+		return bits;
+	}
+
+	public void add(Card c) {
+		bits |= bit(c);
+	}
+
+	public void addAll(Card[] cards) {
+		bits |= bits(cards);
+	}
+
+	public void addAll(CardSet other) {
+		bits |= other.bits;
+	}
+
+	public void remove(Card c) {
+		bits &= ~bit(c);
+	}
+
+	public boolean contains(Card c) {
+		return (bits & bit(c)) != 0;
+	}
+
+	public boolean intersects(CardSet other) {
+		return (bits & other.bits) != 0;
+	}
+
+	public CardSet union(CardSet other) {
+		return new CardSet(bits | other.bits);
+	}
+
+	public int size() {
+		return Long.bitCount(bits);
+	}
+
+	public boolean isEmpty() {
+		return bits == 0;
+	}
+
+	public void clear() {
+		bits = 0;
+	}
+
+	// Ranks present in the given suit, as a HandRank rank mask.
+	public int suitMask(int suit) {
+		return suitMask(bits, suit);
+	}
+
+	public static int suitMask(long bits, int suit) {
+		return (int) ((bits >>> (suit * SUIT_BITS)) & RANK_MASK);
+	}
+
+	public Card[] toArray() {
+		Card[] ret = new Card[size()];
+		long rest = bits;
+		for (int i = 0; rest != 0; i++) {
+			ret[i] = bitToCard[Long.numberOfTrailingZeros(rest)];
+			rest &= rest - 1;
+		}
+		return ret;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof CardSet && ((CardSet) o).bits == bits;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (bits ^ (bits >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		Card[] cards = toArray();
+		for (int i = 0; i < cards.length; i++) {
+			if (i > 0) sb.append(", ");
+			sb.append(cards[i]);
+		}
+		return sb.append("]").toString();
+	}
+}
@@ -30,4 +30,5 @@ public class Constants {
 	public static final String INTENT_IS_SERVER      = "s";
 	public static final String INTENT_BROADCAST      = "b";
 	public static final String INTENT_WIFI_DIRECT    = "w";
+	public static final String INTENT_TABLE_ID       = "t";
 }
@@ -16,47 +16,70 @@
  * with this program; if not, write to the Free Software Foundation, Inc.,
  * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
  */
-
 package edu.vub.at.nfcpoker;
 
 //From http://www.dreamincode.net/forums/topic/116864-how-to-make-a-poker-game-in-java/
 
 import java.util.Random;
-import java.util.ArrayList;
+
+// The cards are kept as Card indices in an int[] and shuffled lazily: every draw
+// swaps a random card of the undrawn part to the front (a partial Fisher-Yates),
+// so dealing costs one random number per card drawn.
+// Since the array always stays a permutation, shuffle() only has to put the drawn
+// cards back and the deck can be reused for the next hand.
 
 public class Deck {
-	private ArrayList<Card> cards;
+	private final int[] cards = new int[52];
+	private final int size;
+	private int drawn;
+	private Random random;
 
 	public Deck() {
-		cards = new ArrayList<Card>();
+		this(new CardSet());
+	}
+
+	// A shuffled deck without the given cards, e.g. the ones already dealt.
+	public Deck(CardSet exclude) {
+		this(exclude, new Random());
+	}
 
-		for (short suit=0; suit<=3; suit++) {
-			for (short rank=0; rank<=12; rank++) {
-			   cards.add(new Card(suit,rank));
-			 }
+	// Pass an XorShiftRandom for simulations, or a seeded Random to replay the same deals.
+	public Deck(CardSet exclude, Random random) {
+		int size = 0;
+		for (int i=0; i<52; i++) {
+			if (!exclude.contains(Card.get(i)))
+				cards[size++] = i;
 		}
+		this.size = size;
+		this.random = random;
+	}
 
-		shuffle();
+	public void setRandom(Random random) {
+		this.random = random;
 	}
 
+	// Puts all drawn cards back.
 	public void shuffle() {
-		Random generator = new Random();
-
-		for (int idx = cards.size() - 1; idx > 0; idx--) {
-			int victim = generator.nextInt(idx + 1);
+		drawn = 0;
+	}
 
-			Card temp = (Card) cards.get(victim);
-			cards.set(victim , cards.get(idx));
-			cards.set(idx, temp);
-		}
+	// Index (see Card.get) of the next card.
+	public int drawIndex() {
+		if (drawn == size)
+			throw new IllegalStateException("No cards left in the deck");
+		int victim = drawn + random.nextInt(size - drawn);
+		int card = cards[victim];
+		cards[victim] = cards[drawn];
+		cards[drawn++] = card;
+		return card;
 	}
 
-	public Card drawFromDeck() {	   
-		return cards.remove( cards.size()-1 );
+	public Card drawFromDeck() {
+		return Card.get(drawIndex());
 	}
 
 	public int getTotalCards() {
-		return cards.size();  //we could use this method when making a complete poker game to see if we needed a new deck
+		return size - drawn;
 	}
 
 	public Card[] drawCards(int i) {
@@ -67,4 +90,3 @@ public class Deck {
 		return ret;
 	}
 } 
-
@@ -0,0 +1,61 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package edu.vub.at.nfcpoker;
+
+// Outcome of an equity computation for one player, as fractions of the deals looked at.
+public class Equity {
+	public final double win;
+	public final double tie;
+	public final double lose;
+	public final double tieShare;   // sum over ties of 1 / (number of players sharing the pot), as a fraction
+	public final long samples;
+
+	public Equity(double win, double tie, double lose, double tieShare) {
+		this.win = win;
+		this.tie = tie;
+		this.lose = lose;
+		this.tieShare = tieShare;
+		this.samples = 0;
+	}
+
+	public Equity(long wins, long ties, long losses, double tieShares) {
+		long total = wins + ties + losses;
+		this.samples = total;
+		if (total == 0) {
+			win = tie = lose = tieShare = 0;
+		} else {
+			win = (double) wins / total;
+			tie = (double) ties / total;
+			lose = (double) losses / total;
+			tieShare = tieShares / total;
+		}
+	}
+
+	// Expected share of the pot.
+	public double equity() {
+		return win + tieShare;
+	}
+
+	@Override
+	public String toString() {
+		String s = String.format("win %.3f, tie %.3f, lose %.3f", win, tie, lose);
+		return samples == 0 ? s : s + " (" + samples + " deals)";
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Bounded LRU cache of computed equities, shared by everyone who asks for them.
+// Keyed by SuitIsomorphism.key and the number of players, so configurations that
+// only differ in suits share an entry.
+
+public class EquityCache {
+	private final int capacity;
+	private final LinkedHashMap<Long, Equity> entries;
+
+	// Guarded by this
+	private long hits, misses, evictions;
+
+	public EquityCache(final int capacity) {
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<Long, Equity>(capacity * 4 / 3 + 1, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Equity> eldest) {
+				if (size() <= EquityCache.this.capacity)
+					return false;
+				evictions++;
+				return true;
+			}
+		};
+	}
+
+	// players includes the owner of the hole cards
+	public static long key(CardSet holeCards, CardSet board, int players) {
+		return ((long) players << SuitIsomorphism.KEY_BITS) | SuitIsomorphism.key(holeCards, board);
+	}
+
+	public synchronized Equity get(CardSet holeCards, CardSet board, int players) {
+		Equity e = entries.get(key(holeCards, board, players));
+		if (e == null)
+			misses++;
+		else
+			hits++;
+		return e;
+	}
+
+	public synchronized void put(CardSet holeCards, CardSet board, int players, Equity equity) {
+		entries.put(key(holeCards, board, players), equity);
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized double getHitRatio() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		hits = misses = evictions = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%d/%d entries, hit ratio %.2f (%d hits, %d misses), %d evictions",
+				entries.size(), capacity, getHitRatio(), hits, misses, evictions);
+	}
+}
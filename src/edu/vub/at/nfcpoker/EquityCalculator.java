@@ -0,0 +1,338 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package edu.vub.at.nfcpoker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+// Monte Carlo equity: deals random opponent hole cards and the rest of the board
+// and counts how often our hole cards win, tie or lose at showdown.
+// The samples are split over a fixed pool of worker threads, each with its own
+// random generator and Deck, so a sample does not allocate anything.
+//
+// Once at most one board card is missing, enumerate() walks every runout and
+// every combination of opponent hole cards instead, which gives the exact result.
+
+public class EquityCalculator {
+	// How often (in samples) a worker checks whether it ran out of time.
+	private static final int DEADLINE_CHECK_INTERVAL = 256;
+	private static final int MAX_PLAYERS = 23;   // 2 * 23 + 5 <= 52
+
+	private final ExecutorService executor;
+	private final int workers;
+
+	public EquityCalculator() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public EquityCalculator(int workers) {
+		this.workers = Math.max(1, workers);
+		this.executor = Executors.newFixedThreadPool(this.workers, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "wePoker - Equity");
+				t.setDaemon(true);
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			}
+		});
+	}
+
+	// Number of samples needed for the given standard error on the win fraction (worst case p = 0.5).
+	public static long samplesForAccuracy(double accuracy) {
+		return (long) Math.ceil(0.25 / (accuracy * accuracy));
+	}
+
+	// players includes ourselves. Stops after enough samples for the requested accuracy,
+	// or when timeBudgetMillis has passed, whichever comes first.
+	public Equity simulate(CardSet holeCards, CardSet board, int players, double accuracy, long timeBudgetMillis) throws InterruptedException {
+		int opponents = Math.min(Math.max(players, 2), MAX_PLAYERS) - 1;
+		long samples = samplesForAccuracy(accuracy);
+		long deadline = System.nanoTime() + timeBudgetMillis * 1000000L;
+		long seed = System.nanoTime();
+		HandEvaluator evaluator = HandEvaluators.getDefault();
+
+		List<Future<Tally>> results = new ArrayList<Future<Tally>>(workers);
+		for (int w = 0; w < workers; w++) {
+			long share = samples / workers + (w < samples % workers ? 1 : 0);
+			results.add(executor.submit(new Simulation(evaluator, holeCards.getBits(), board.getBits(), opponents,
+					share, deadline, seed + w * 0x9E3779B97F4A7C15L)));
+		}
+
+		return collect(results);
+	}
+
+	private static Equity collect(List<Future<Tally>> results) throws InterruptedException {
+		Tally total = new Tally();
+		for (Tally t : await(results))
+			total.add(t);
+		return total.toEquity();
+	}
+
+	private static <T> List<T> await(List<Future<T>> futures) throws InterruptedException {
+		List<T> ret = new ArrayList<T>(futures.size());
+		try {
+			for (Future<T> f : futures)
+				ret.add(f.get());
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			for (Future<T> f : futures)
+				f.cancel(true);
+		}
+		return ret;
+	}
+
+	// Bit indices (in CardSet layout) of all cards not in dead, returns how many there are.
+	private static int unseenCards(long dead, int[] into) {
+		int size = 0;
+		for (int i = 0; i < 52; i++) {
+			int bit = CardSet.bitIndex(Card.get(i));
+			if ((dead & (1L << bit)) == 0)
+				into[size++] = bit;
+		}
+		return size;
+	}
+
+	// Number of showdowns enumerate() would look at, or infinity if more than one board card is missing.
+	public static double enumerationSize(CardSet holeCards, CardSet board, int players) {
+		int opponents = Math.min(Math.max(players, 2), MAX_PLAYERS) - 1;
+		int missing = 5 - board.size();
+		if (missing > 1)
+			return Double.POSITIVE_INFINITY;
+		int unseen = 52 - holeCards.size() - board.size();
+		double size = missing == 0 ? 1 : unseen;
+		int left = unseen - missing;
+		for (int o = 0; o < opponents; o++) {
+			size *= (double) left * (left - 1) / 2;
+			left -= 2;
+		}
+		for (int o = 2; o <= opponents; o++)
+			size /= o;
+		return size;
+	}
+
+	// Exact equity, for a board with 4 or 5 cards.
+	public Equity enumerate(CardSet holeCards, CardSet board, int players) throws InterruptedException {
+		return enumerate(holeCards, board, players, null);
+	}
+
+	// On the turn, byRiver (64 entries) also receives the exact equity for every
+	// river card, indexed by CardSet.bitIndex; entries of impossible rivers stay null.
+	public Equity enumerate(CardSet holeCards, CardSet board, int players, Equity[] byRiver) throws InterruptedException {
+		if (board.size() < 4)
+			throw new IllegalArgumentException("Cannot enumerate a board of " + board.size() + " cards");
+		int opponents = Math.min(Math.max(players, 2), MAX_PLAYERS) - 1;
+		HandEvaluator evaluator = HandEvaluators.getDefault();
+
+		List<Future<Tally[]>> results = new ArrayList<Future<Tally[]>>(workers);
+		for (int w = 0; w < workers; w++)
+			results.add(executor.submit(new Enumeration(evaluator, holeCards.getBits(), board.getBits(), opponents, w, workers)));
+
+		Tally total = new Tally();
+		Tally[] perRunout = new Tally[64];
+		for (Tally[] part : await(results)) {
+			for (int i = 0; i < part.length; i++) {
+				if (part[i] == null)
+					continue;
+				total.add(part[i]);
+				if (perRunout[i] == null)
+					perRunout[i] = new Tally();
+				perRunout[i].add(part[i]);
+			}
+		}
+		if (byRiver != null && board.size() == 4) {
+			for (int i = 0; i < perRunout.length; i++)
+				byRiver[i] = perRunout[i] == null ? null : perRunout[i].toEquity();
+		}
+		return total.toEquity();
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	static class Tally {
+		long wins, ties, losses;
+		double tieShares;
+
+		void add(Tally other) {
+			wins += other.wins;
+			ties += other.ties;
+			losses += other.losses;
+			tieShares += other.tieShares;
+		}
+
+		// Showdown of our strength against the opponents', tied = number of opponents with the same strength.
+		void record(boolean lost, int tied) {
+			if (lost) {
+				losses++;
+			} else if (tied > 0) {
+				ties++;
+				tieShares += 1.0 / (tied + 1);
+			} else {
+				wins++;
+			}
+		}
+
+		Equity toEquity() {
+			return new Equity(wins, ties, losses, tieShares);
+		}
+	}
+
+	private static class Simulation implements Callable<Tally> {
+		private final HandEvaluator evaluator;
+		private final long hole, board;
+		private final int opponents;
+		private final long samples;
+		private final long deadline;
+		private final XorShiftRandom random;
+
+		Simulation(HandEvaluator evaluator, long hole, long board, int opponents, long samples, long deadline, long seed) {
+			this.evaluator = evaluator;
+			this.hole = hole;
+			this.board = board;
+			this.opponents = opponents;
+			this.samples = samples;
+			this.deadline = deadline;
+			this.random = new XorShiftRandom(seed);
+		}
+
+		@Override
+		public Tally call() {
+			Deck deck = new Deck(new CardSet(hole | board), random);
+			int missing = 5 - Long.bitCount(board);
+
+			Tally tally = new Tally();
+			for (long s = 0; s < samples; s++) {
+				if (s % DEADLINE_CHECK_INTERVAL == 0 && s > 0 && System.nanoTime() > deadline)
+					break;
+
+				deck.shuffle();
+				long fullBoard = board;
+				for (int i = 0; i < missing; i++)
+					fullBoard |= CardSet.bitOfIndex(deck.drawIndex());
+
+				int ours = evaluator.evaluate(fullBoard | hole);
+				boolean lost = false;
+				int tied = 0;
+				for (int o = 0; o < opponents; o++) {
+					long theirs = CardSet.bitOfIndex(deck.drawIndex()) | CardSet.bitOfIndex(deck.drawIndex());
+					int strength = evaluator.evaluate(fullBoard | theirs);
+					if (strength > ours) {
+						lost = true;
+						break;
+					}
+					if (strength == ours)
+						tied++;
+				}
+				tally.record(lost, tied);
+			}
+			return tally;
+		}
+	}
+
+	// Walks all runouts and all sets of opponent hole cards. The strength of every possible
+	// opponent hand is computed once per runout, by the worker that takes the runout, so the
+	// showdowns themselves are plain comparisons. On the turn worker w of n takes every n-th
+	// river card; on the river, with a single runout, it takes every n-th first opponent hand.
+	private static class Enumeration implements Callable<Tally[]> {
+		private final HandEvaluator evaluator;
+		private final long hole, board;
+		private final int opponents;
+		private final int worker, workers;
+
+		private long[] combos;
+		private int[] strengths;
+		private int comboCount;
+		private final Tally[] byRunout = new Tally[64];   // by runout bit index, slot 0 on the river
+		private Tally tally;
+
+		Enumeration(HandEvaluator evaluator, long hole, long board, int opponents, int worker, int workers) {
+			this.evaluator = evaluator;
+			this.hole = hole;
+			this.board = board;
+			this.opponents = opponents;
+			this.worker = worker;
+			this.workers = workers;
+		}
+
+		@Override
+		public Tally[] call() {
+			int[] deck = new int[52];
+			int size = unseenCards(hole | board, deck);
+			combos = new long[size * (size - 1) / 2];
+			strengths = new int[combos.length];
+
+			boolean river = Long.bitCount(board) == 5;
+			for (int r = 0; r < (river ? 1 : size); r++) {
+				if (!river && r % workers != worker)
+					continue;
+				long fullBoard = river ? board : board | (1L << deck[r]);
+				tally = byRunout[river ? 0 : deck[r]] = new Tally();
+				HandEvaluator.PreparedBoard prepared = evaluator.prepareBoard(fullBoard);
+				int ours = prepared.evaluate(hole);
+
+				comboCount = 0;
+				for (int i = 0; i < size; i++) {
+					for (int j = i + 1; j < size; j++) {
+						long combo = (1L << deck[i]) | (1L << deck[j]);
+						if ((combo & fullBoard) != 0)
+							continue;
+						combos[comboCount] = combo;
+						strengths[comboCount] = prepared.evaluate(combo);
+						comboCount++;
+					}
+				}
+
+				for (int first = 0; first < comboCount; first++) {
+					if (river && first % workers != worker)
+						continue;
+					if (Thread.interrupted())
+						return byRunout;
+					int strength = strengths[first];
+					showdown(first + 1, opponents - 1, combos[first], ours, strength > ours, strength == ours ? 1 : 0);
+				}
+			}
+			return byRunout;
+		}
+
+		private void showdown(int from, int remaining, long used, int ours, boolean lost, int tied) {
+			if (remaining == 0) {
+				tally.record(lost, tied);
+				return;
+			}
+			for (int i = from; i < comboCount; i++) {
+				long combo = combos[i];
+				if ((combo & used) != 0)
+					continue;
+				int strength = strengths[i];
+				showdown(i + 1, remaining - 1, used | combo, ours,
+						lost || strength > ours, strength == ours ? tied + 1 : tied);
+			}
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker;
+
+// Lookup tables for 5-card hands, built in memory from HandRank (about 56 KB).
+//
+// Hands with five or more cards of one suit are looked up by that suit's rank mask
+// in flushes[] (a flush always beats whatever else 7 cards can make).
+// Other hands only depend on the multiset of their ranks: the five ranks sorted as
+// a0 <= ... <= a4 are numbered by sum C(a_i + i, i + 1), a perfect hash onto the
+// C(17, 5) = 6188 multisets. Six or seven cards take the best of their 6 or 21
+// five-card subsets.
+
+public class FiveCardHandEvaluator implements HandEvaluator {
+	private static final int RANKS = 13;
+	private static final int MULTISETS = 6188;
+
+	// CHOOSE[n][k] = n over k
+	private static final int[][] CHOOSE = new int[RANKS + 5][6];
+	static {
+		for (int n = 0; n < CHOOSE.length; n++) {
+			CHOOSE[n][0] = 1;
+			for (int k = 1; k < 6 && k <= n; k++)
+				CHOOSE[n][k] = CHOOSE[n - 1][k - 1] + (k < n ? CHOOSE[n - 1][k] : 0);
+		}
+	}
+
+	private final int[] flushes = new int[1 << RANKS];
+	private final int[] ranks = new int[MULTISETS];
+
+	public FiveCardHandEvaluator() {
+		for (int mask = 0; mask < flushes.length; mask++)
+			if (Integer.bitCount(mask) >= 5)
+				flushes[mask] = HandRank.evaluate(mask, 0, 0, 0);
+		fillRanks(0, 0, 0, 0, new int[4]);
+	}
+
+	// Every sorted rank list of 5 ranks, packed 4 bits per rank; suits[] are the suit
+	// masks of a deal without a flush (the i-th card goes to suit i % 4).
+	private void fillRanks(int count, int from, int packed, int repeats, int[] suits) {
+		if (count == 5) {
+			ranks[hash(packed, 5, -1, -1)] = HandRank.evaluate(suits[0], suits[1], suits[2], suits[3]);
+			return;
+		}
+		for (int r = from; r < RANKS; r++) {
+			int same = r == from && count > 0 ? repeats + 1 : 1;
+			if (same > 4)
+				continue;
+			int suit = count % 4;
+			int bit = 1 << r;
+			suits[suit] |= bit;
+			fillRanks(count + 1, r, packed | (r << (4 * count)), same, suits);
+			suits[suit] &= ~bit;
+		}
+	}
+
+	// Hash of the sorted ranks in packed (n of them), leaving out positions skipA and skipB.
+	private static int hash(int packed, int n, int skipA, int skipB) {
+		int h = 0;
+		for (int p = 0, i = 0; p < n; p++) {
+			if (p == skipA || p == skipB)
+				continue;
+			int rank = (packed >>> (4 * p)) & 0xF;
+			h += CHOOSE[rank + i][i + 1];
+			i++;
+		}
+		return h;
+	}
+
+	@Override
+	public int evaluate(long cards) {
+		return evaluate(CardSet.suitMask(cards, 0), CardSet.suitMask(cards, 1),
+		                CardSet.suitMask(cards, 2), CardSet.suitMask(cards, 3));
+	}
+
+	// Keeps the suit masks of the board, every hand only adds its own two cards to them
+	@Override
+	public PreparedBoard prepareBoard(long board) {
+		final int b0 = CardSet.suitMask(board, 0), b1 = CardSet.suitMask(board, 1);
+		final int b2 = CardSet.suitMask(board, 2), b3 = CardSet.suitMask(board, 3);
+		return new PreparedBoard() {
+			@Override
+			public int evaluate(long h) {
+				return FiveCardHandEvaluator.this.evaluate(b0 | CardSet.suitMask(h, 0), b1 | CardSet.suitMask(h, 1),
+				                                           b2 | CardSet.suitMask(h, 2), b3 | CardSet.suitMask(h, 3));
+			}
+		};
+	}
+
+	private int evaluate(int m0, int m1, int m2, int m3) {
+		if (Integer.bitCount(m0) >= 5) return flushes[m0];
+		if (Integer.bitCount(m1) >= 5) return flushes[m1];
+		if (Integer.bitCount(m2) >= 5) return flushes[m2];
+		if (Integer.bitCount(m3) >= 5) return flushes[m3];
+
+		// Sorted ranks, 4 bits each.
+		int packed = 0, n = 0;
+		for (int r = 0; r < RANKS; r++) {
+			int bit = 1 << r;
+			int copies = ((m0 & bit) != 0 ? 1 : 0) + ((m1 & bit) != 0 ? 1 : 0)
+			           + ((m2 & bit) != 0 ? 1 : 0) + ((m3 & bit) != 0 ? 1 : 0);
+			for (int c = 0; c < copies; c++)
+				packed |= r << (4 * n++);
+		}
+
+		if (n == 5)
+			return ranks[hash(packed, 5, -1, -1)];
+		int best = 0;
+		for (int a = 0; a < n; a++) {
+			if (n == 6) {
+				best = Math.max(best, ranks[hash(packed, 6, a, -1)]);
+				continue;
+			}
+			for (int b = a + 1; b < n; b++)
+				best = Math.max(best, ranks[hash(packed, 7, a, b)]);
+		}
+		return best;
+	}
+
+	@Override
+	public long getTableSize() {
+		return 4L * (flushes.length + ranks.length);
+	}
+
+	@Override
+	public String toString() {
+		return "5-card table evaluator";
+	}
+}
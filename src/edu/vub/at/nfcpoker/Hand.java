@@ -19,203 +19,73 @@
 
 package edu.vub.at.nfcpoker;
 
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
-import java.util.Vector;
-
 // From http://www.dreamincode.net/forums/topic/116864-how-to-make-a-poker-game-in-java/
 
 public class Hand implements Comparable<Hand> {
 	public Card[] cards;
-	private int[] value;
+	private int value;        // packed strength, see HandRank
 	
 	
 	// for kryo
 	public Hand() {}
 
 	public Hand(Card[] cards) {
-		value = new int[6];
-		this.cards = cards;
-
-		int[] ranks = new int[14];
-		int[] orderedRanks = new int[5];	 //miscellaneous cards that are not otherwise significant
-		boolean flush=true, straight=false;
-		int sameCards=1,sameCards2=1;
-		int largeGroupRank=0,smallGroupRank=0;
-		int index=0;
-		int topStraightValue=0;
-
-		for (int x=0; x<=13; x++) {
-			ranks[x]=0;
-		}
-		for (int x=0; x<=4; x++) {
-			ranks[ cards[x].getRank() ]++;
-		}
-		for (int x=0; x<4; x++) {
-			if ( cards[x].getSuit() != cards[x+1].getSuit() )
-				flush=false;
-		}
-		
-		for (int x=13; x>=1; x--) {
-			if (ranks[x] > sameCards) {
-				if (sameCards == 1) {
-					largeGroupRank = x;
-				} else {
-					sameCards2 = sameCards;   // if sameCards was assigned to, write data from 
-					smallGroupRank = x;		  // top group to low group			   
-				}
-				sameCards = ranks[x];		  // update sameCards to new greatest sameCards value in ranks
-			} else if (ranks[x] > sameCards2) {
-				sameCards2 = ranks[x];
-				smallGroupRank = x;
-			}
-		}
-
-		if (ranks[1]==1) {
-			orderedRanks[index]=14;
-			index++;
-		}
-
-		for (int x=13; x>=2; x--) {
-			if (ranks[x]==1) {
-				orderedRanks[index]=x;
-				index++;
-			}
-		}
-		
-		for (int x=1; x<=9; x++) {
-			if (ranks[x]==1 && ranks[x+1]==1 && ranks[x+2]==1 && ranks[x+3]==1 && ranks[x+4]==1) {
-				straight=true;
-				topStraightValue=x+4; //4 above bottom value
-				break;
-			}
-		}
-
-		if (ranks[10]==1 && ranks[11]==1 && ranks[12]==1 && ranks[13]==1 && ranks[1]==1) {
-			straight=true;
-			topStraightValue=14; //higher than king
-		}
-		
-		for (int x=0; x<=5; x++) {
-			value[x]=0;
-		}
-
-
-		 //start hand evaluation
-		if (sameCards == 1) {
-			value[0]=1;
-			value[1]=orderedRanks[0];
-			value[2]=orderedRanks[1];
-			value[3]=orderedRanks[2];
-			value[4]=orderedRanks[3];
-			value[5]=orderedRanks[4];
-		}
-
-		if (sameCards==2 && sameCards2==1)
-		{
-			value[0]=2;
-			value[1]=largeGroupRank; //rank of pair
-			value[2]=orderedRanks[0];
-			value[3]=orderedRanks[1];
-			value[4]=orderedRanks[2];
-		}
-
-		if (sameCards==2 && sameCards2==2) //two pair
-		{
-			value[0]=3;
-			value[1]= largeGroupRank>smallGroupRank ? largeGroupRank : smallGroupRank; //rank of greater pair
-			value[2]= largeGroupRank<smallGroupRank ? largeGroupRank : smallGroupRank;
-			value[3]=orderedRanks[0];  //extra card
-		}
-
-		if (sameCards==3 && sameCards2!=2)
-		{
-			value[0]=4;
-			value[1]= largeGroupRank;
-			value[2]=orderedRanks[0];
-			value[3]=orderedRanks[1];
-		}
-
-		if (straight && !flush)
-		{
-			value[0]=5;
-			value[1]=topStraightValue;
-		}
-
-		if (flush && !straight)
-		{
-			value[0]=6;
-			value[1]=orderedRanks[0]; //tie determined by ranks of cards
-			value[2]=orderedRanks[1];
-			value[3]=orderedRanks[2];
-			value[4]=orderedRanks[3];
-			value[5]=orderedRanks[4];
-		}
-
-		if (sameCards==3 && sameCards2==2)
-		{
-			value[0]=7;
-			value[1]=largeGroupRank;
-			value[2]=smallGroupRank;
-		}
-
-		if (sameCards==4)
-		{
-			value[0]=8;
-			value[1]=largeGroupRank;
-			value[2]=orderedRanks[0];
-		}
-
-		if (straight && flush)
-		{
-			value[0]=9;
-			value[1]=topStraightValue;
-		}
-
+		this(HandEvaluators.getDefault().evaluate(CardSet.bits(cards)), cards);
+	}
 
+	private Hand(int strength, Card[] cards) {
+		this.cards = cards;
+		this.value = strength;
 	}
-  
 
-	void display()
+	public static String describe(int strength)
 	{
 		String s;
-		switch( value[0] )
+		int high = HandRank.kicker(strength, 0);
+		int second = HandRank.kicker(strength, 1);
+		switch( HandRank.category(strength) )
 		{
 
 			case 1:
 				s="high card";
 				break;
 			case 2:
-				s="pair of " + Card.rankAsString(value[1]) + "\'s";
+				s="pair of " + rankAsString(high) + "\'s";
 				break;
 			case 3:
-				s="two pair " + Card.rankAsString(value[1]) + " " + Card.rankAsString(value[2]);
+				s="two pair " + rankAsString(high) + " " + rankAsString(second);
 				break;
 			case 4:
-				s="three of a kind " + Card.rankAsString(value[1]) + "\'s";
+				s="three of a kind " + rankAsString(high) + "\'s";
 				break;
 			case 5:
-				s=Card.rankAsString(value[1]) + " high straight";
+				s=rankAsString(high) + " high straight";
 				break;
 			case 6:
 				s="flush";
 				break;
 			case 7:
-				s="full house " + Card.rankAsString(value[1]) + " over " + Card.rankAsString(value[2]);
+				s="full house " + rankAsString(high) + " over " + rankAsString(second);
 				break;
 			case 8:
-				s="four of a kind " + Card.rankAsString(value[1]);
+				s="four of a kind " + rankAsString(high);
 				break;
 			case 9:
-				s="straight flush " + Card.rankAsString(value[1]) + " high";
+				s="straight flush " + rankAsString(high) + " high";
 				break;
 			default:
-				s="error in Hand.display: value[0] contains invalid value";
+				s="error in Hand.describe: invalid hand strength";
 		}
-		s = "				" + s;
-		System.out.println(s);
+		return s;
+	}
+
+	void display()
+	{
+		System.out.println("				" + describe(value));
+	}
+
+	private static String rankAsString(int pokerRank) {
+		return Card.rankAsString(HandRank.cardRank(pokerRank));
 	}
 
 	void displayAll()
@@ -226,67 +96,69 @@ public class Hand implements Comparable<Hand> {
 
 	public int compareTo(Hand that)
 	{
-		for (int x=0; x<6; x++)
-		{
-			if (this.value[x]>that.value[x])
-				return 1;
-			else if (this.value[x]<that.value[x])
-				return -1;
-		}
-		return 0;
+		return this.value < that.value ? -1 : (this.value == that.value ? 0 : 1);
 	}
 	
-	public static Hand makeBestHand(Set<Card> base, Collection<Card> holeCards) {
-		Vector<Card> pool = new Vector<Card>();
-		pool.addAll(base);
-		pool.addAll(holeCards);
-				
-		Set<Hand> hands = makeHands(pool);
-		
-		Iterator<Hand> it = hands.iterator();
-		Hand bestHand = it.next();
-		
-		while (it.hasNext()) {
-			Hand next = it.next();
-			if (bestHand.compareTo(next) < 0)
-				bestHand = next;
-		}
-			
-		return bestHand;
+	// Only use this when the hand itself has to be shown or sent,
+	// HandEvaluator.evaluate is enough to compare hands.
+	public static Hand makeBestHand(CardSet pool) {
+		return fromStrength(HandEvaluators.getDefault().evaluate(pool.getBits()), pool.toArray());
 	}
 
-	private static Set<Hand> makeHands(Vector<Card> pool) {
-		Set<Card[]> s = new HashSet<Card[]>();
-		s.add(pool.toArray(new Card[pool.size()]));
-		return makeHands(s, pool.size());
-	}
+	// Picks the five cards out of pool that make up the given strength.
+	public static Hand fromStrength(int strength, Card[] pool) {
+		int category = HandRank.category(strength);
+		Card[] best = new Card[5];
+		int found = 0;
+
+		int flushSuit = -1;
+		if (category == HandRank.FLUSH || category == HandRank.STRAIGHT_FLUSH) {
+			int[] perSuit = new int[4];
+			for (Card c : pool)
+				if (++perSuit[c.getSuit()] >= 5)
+					flushSuit = c.getSuit();
+		}
 
-	private static Set<Hand> makeHands(Set<Card[]> hands, int size) {
-		if (size == 5) {
-			Set<Hand> ret = new HashSet<Hand>();
-			for (Card[] cards : hands) 
-				ret.add(new Hand(cards));
-			return ret;
+		if (category == HandRank.STRAIGHT || category == HandRank.STRAIGHT_FLUSH) {
+			int top = HandRank.kicker(strength, 0);
+			for (int r = top; r > top - 5; r--)
+				found = pick(pool, best, found, r == 1 ? 14 : r, flushSuit, 1);
 		} else {
-			Set<Card[]> next = new HashSet<Card[]>();
-			for (Card[] cards : hands) {
-				Vector<Card> baseCards = new Vector<Card>();
-				for (Card c : cards)
-					baseCards.add(c);
-				
-				for (int skip = 0; skip < size; skip++) {
-					@SuppressWarnings("unchecked")
-					Vector<Card> newCards = (Vector<Card>) baseCards.clone();
-					newCards.remove(skip);
-					next.add(newCards.toArray(new Card[size - 1]));
-				}
+			int[] counts;
+			switch (category) {
+			case HandRank.FOUR_OF_A_KIND: counts = new int[] { 4, 1 }; break;
+			case HandRank.FULL_HOUSE: counts = new int[] { 3, 2 }; break;
+			case HandRank.THREE_OF_A_KIND: counts = new int[] { 3, 1, 1 }; break;
+			case HandRank.TWO_PAIR: counts = new int[] { 2, 2, 1 }; break;
+			case HandRank.PAIR: counts = new int[] { 2, 1, 1, 1 }; break;
+			default: counts = new int[] { 1, 1, 1, 1, 1 }; break;
 			}
-			return makeHands(next, size - 1);
+			for (int k = 0; k < counts.length; k++)
+				found = pick(pool, best, found, HandRank.kicker(strength, k), flushSuit, counts[k]);
 		}
+
+		return new Hand(strength, best);
+	}
+
+	private static int pick(Card[] pool, Card[] into, int found, int pokerRank, int suit, int count) {
+		int rank = HandRank.cardRank(pokerRank);
+		for (Card c : pool) {
+			if (count == 0 || found == into.length)
+				break;
+			if (c.getRank() != rank || (suit >= 0 && c.getSuit() != suit))
+				continue;
+			into[found++] = c;
+			count--;
+		}
+		return found;
 	}
 
+	// Hand category, 1 (high card) to 9 (straight flush)
 	public int getValue() {
-		return value[0];
+		return HandRank.category(value);
 	}
-}
 
+	public int getStrength() {
+		return value;
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker;
+
+// Ranks 5 to 7 cards. Every implementation returns the same packed strength as
+// HandRank.evaluate, so strengths of different evaluators can be compared and
+// Hand.describe / Hand.fromStrength work on all of them.
+// See HandEvaluators for the available implementations and how one is picked.
+
+public interface HandEvaluator {
+	// cards in CardSet layout
+	int evaluate(long cards);
+
+	// A board ranked against many pairs of hole cards, as in a showdown. The evaluator
+	// does the work that only depends on the board once, in prepareBoard.
+	public interface PreparedBoard {
+		// Strength of the board with holeCards (CardSet layout), 7 cards at most
+		int evaluate(long holeCards);
+	}
+
+	PreparedBoard prepareBoard(long board);
+
+	// Bytes of lookup tables this evaluator keeps around, on the heap or mapped from a file.
+	long getTableSize();
+}
@@ -0,0 +1,100 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Picks the HandEvaluator everything else uses.
+//
+//   BitHandEvaluator        no tables
+//   FiveCardHandEvaluator   about 56 KB on the heap
+//   SevenCardHandEvaluator  about 4 MB mapped from a file
+//
+// Which one is fastest depends on the VM (a JIT with intrinsics for bitCount and
+// friends favours the bit evaluator), so select() times the ones that fit in the
+// memory budget and keeps the fastest. Until select() has run (it may take a
+// moment when the 7-card table has to be generated) the bit evaluator is used.
+
+public class HandEvaluators {
+	public static final long FIVE_CARD_TABLE_SIZE = 4L * ((1 << 13) + 6188);
+	private static final int CALIBRATION_HANDS = 1 << 12;
+	private static final int CALIBRATION_ROUNDS = 4;
+
+	private static volatile HandEvaluator current = new BitHandEvaluator();
+	// keeps the calibration loops from being optimised away
+	static volatile int calibrationSink;
+
+	private HandEvaluators() {}
+
+	public static HandEvaluator getDefault() {
+		return current;
+	}
+
+	public static void setDefault(HandEvaluator evaluator) {
+		current = evaluator;
+	}
+
+	// The fastest evaluator whose tables fit in memoryBudget bytes.
+	// tableFile is where the 7-card table lives (or null to not use it).
+	public static HandEvaluator select(long memoryBudget, File tableFile) throws IOException {
+		List<HandEvaluator> candidates = new ArrayList<HandEvaluator>();
+		candidates.add(new BitHandEvaluator());
+		if (memoryBudget >= FIVE_CARD_TABLE_SIZE)
+			candidates.add(new FiveCardHandEvaluator());
+		if (tableFile != null && memoryBudget >= SevenCardHandEvaluator.TABLE_SIZE)
+			candidates.add(SevenCardHandEvaluator.open(tableFile));
+		return candidates.size() == 1 ? candidates.get(0) : fastest(candidates);
+	}
+
+	// Times all candidates on the same random 7-card hands; every candidate gets
+	// all rounds and the best one counts, the first rounds double as warm-up.
+	static HandEvaluator fastest(List<HandEvaluator> candidates) {
+		long[] hands = new long[CALIBRATION_HANDS];
+		Deck deck = new Deck(new CardSet(), new XorShiftRandom(CALIBRATION_HANDS));
+		for (int i = 0; i < hands.length; i++) {
+			deck.shuffle();
+			for (int c = 0; c < 7; c++)
+				hands[i] |= CardSet.bitOfIndex(deck.drawIndex());
+		}
+
+		long[] best = new long[candidates.size()];
+		Arrays.fill(best, Long.MAX_VALUE);
+		int sink = 0;
+		for (int round = 0; round < CALIBRATION_ROUNDS; round++) {
+			for (int e = 0; e < candidates.size(); e++) {
+				HandEvaluator evaluator = candidates.get(e);
+				long start = System.nanoTime();
+				for (int i = 0; i < hands.length; i++)
+					sink += evaluator.evaluate(hands[i]);
+				best[e] = Math.min(best[e], System.nanoTime() - start);
+			}
+		}
+
+		int fastest = 0;
+		for (int e = 1; e < best.length; e++)
+			if (best[e] < best[fastest])
+				fastest = e;
+		calibrationSink = sink;
+		return candidates.get(fastest);
+	}
+}
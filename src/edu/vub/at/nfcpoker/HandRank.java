@@ -0,0 +1,164 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package edu.vub.at.nfcpoker;
+
+// Direct evaluator for 5 to 7 cards, working on one 13-bit rank mask per suit.
+// Bit i of a rank mask stands for poker rank i+2 (bit 0 = deuce, bit 12 = ace).
+//
+// The result is a single int:
+//   category << 20 | kicker1 << 16 | kicker2 << 12 | kicker3 << 8 | kicker4 << 4 | kicker5
+// with the category as returned by Hand.getValue() (1 = high card ... 9 = straight flush)
+// and the kickers as poker ranks (2..14). Stronger hands have larger values.
+
+public final class HandRank {
+	public static final int HIGH_CARD       = 1;
+	public static final int PAIR            = 2;
+	public static final int TWO_PAIR        = 3;
+	public static final int THREE_OF_A_KIND = 4;
+	public static final int STRAIGHT        = 5;
+	public static final int FLUSH           = 6;
+	public static final int FULL_HOUSE      = 7;
+	public static final int FOUR_OF_A_KIND  = 8;
+	public static final int STRAIGHT_FLUSH  = 9;
+
+	static final int CATEGORY_SHIFT = 20;
+
+	private HandRank() {}
+
+	public static int evaluate(Card[] cards) {
+		return evaluate(CardSet.bits(cards));
+	}
+
+	public static int evaluate(CardSet cards) {
+		return evaluate(cards.getBits());
+	}
+
+	// bits as laid out by CardSet
+	public static int evaluate(long bits) {
+		return evaluate(CardSet.suitMask(bits, 0), CardSet.suitMask(bits, 1),
+		                CardSet.suitMask(bits, 2), CardSet.suitMask(bits, 3));
+	}
+
+	public static int evaluate(int m0, int m1, int m2, int m3) {
+		// Flushes: with at most 7 cards only one suit can hold five of them.
+		int flushMask = 0;
+		if (Integer.bitCount(m0) >= 5) flushMask = m0;
+		else if (Integer.bitCount(m1) >= 5) flushMask = m1;
+		else if (Integer.bitCount(m2) >= 5) flushMask = m2;
+		else if (Integer.bitCount(m3) >= 5) flushMask = m3;
+		if (flushMask != 0) {
+			int top = straightTop(flushMask);
+			if (top != 0)
+				return pack(STRAIGHT_FLUSH, top);
+		}
+
+		// Bucket every rank by the number of suits it appears in.
+		int all = m0 | m1 | m2 | m3;
+		int quads = m0 & m1 & m2 & m3;
+		int odd = m0 ^ m1 ^ m2 ^ m3;                     // 1 or 3 suits
+		int atLeastTwo = (m0 & m1) | (m0 & m2) | (m0 & m3) | (m1 & m2) | (m1 & m3) | (m2 & m3);
+		int trips = odd & atLeastTwo;
+		int pairs = atLeastTwo & ~odd & ~quads;
+
+		if (quads != 0) {
+			int quad = highestBit(quads);
+			return pack(FOUR_OF_A_KIND, quad, highestBit(all & ~(1 << quad)));
+		}
+		if (trips != 0) {
+			int trip = highestBit(trips);
+			int rest = (trips & ~(1 << trip)) | pairs;
+			if (rest != 0)
+				return pack(FULL_HOUSE, trip, highestBit(rest));
+		}
+		if (flushMask != 0)
+			return packTop(FLUSH, 0, flushMask, 5);
+
+		int top = straightTop(all);
+		if (top != 0)
+			return pack(STRAIGHT, top);
+
+		if (trips != 0) {
+			int trip = highestBit(trips);
+			return packTop((THREE_OF_A_KIND << 4) | (trip + 2), 1, all & ~(1 << trip), 2);
+		}
+		if (pairs != 0) {
+			int high = highestBit(pairs);
+			int low = highestBit(pairs & ~(1 << high));
+			if (low >= 0) {
+				int kickers = all & ~(1 << high) & ~(1 << low);
+				return packTop((((TWO_PAIR << 4) | (high + 2)) << 4) | (low + 2), 2, kickers, 1);
+			}
+			return packTop((PAIR << 4) | (high + 2), 1, all & ~(1 << high), 3);
+		}
+		return packTop(HIGH_CARD, 0, all, 5);
+	}
+
+	public static int category(int strength) {
+		return strength >>> CATEGORY_SHIFT;
+	}
+
+	// Poker rank (2..14) of the i-th significant rank of the strength, i in 0..4.
+	public static int kicker(int strength, int i) {
+		return (strength >>> (16 - 4 * i)) & 0xF;
+	}
+
+	// Card.getRank() (0 = ace, 1 = deuce, ..., 12 = king) to mask bit index (0 = deuce, ..., 12 = ace).
+	public static int rankIndex(int cardRank) {
+		return cardRank == 0 ? 12 : cardRank - 1;
+	}
+
+	// Poker rank (2..14) back to Card.getRank().
+	public static int cardRank(int pokerRank) {
+		return pokerRank == 14 ? 0 : pokerRank - 1;
+	}
+
+	// Poker rank of the highest card of the best straight in mask, or 0 if there is none.
+	static int straightTop(int mask) {
+		int ext = (mask << 1) | ((mask >>> 12) & 1);   // bit j = poker rank j + 1, ace also low
+		int runs = ext & (ext >>> 1) & (ext >>> 2) & (ext >>> 3) & (ext >>> 4);
+		if (runs == 0)
+			return 0;
+		return highestBit(runs) + 5;
+	}
+
+	static int highestBit(int mask) {
+		return 31 - Integer.numberOfLeadingZeros(mask);
+	}
+
+	private static int pack(int category, int k1) {
+		return (category << CATEGORY_SHIFT) | ((k1 & 0xF) << 16);
+	}
+
+	private static int pack(int category, int i1, int i2) {
+		return (category << CATEGORY_SHIFT) | ((i1 + 2) << 16) | ((i2 + 2) << 12);
+	}
+
+	// v holds the category followed by the used nibbles already decided;
+	// appends the n highest ranks of mask and left-aligns the result.
+	private static int packTop(int v, int used, int mask, int n) {
+		for (int i = 0; i < n && mask != 0; i++) {
+			int bit = highestBit(mask);
+			mask &= ~(1 << bit);
+			v = (v << 4) | (bit + 2);
+			used++;
+		}
+		return v << (4 * (5 - used));
+	}
+}
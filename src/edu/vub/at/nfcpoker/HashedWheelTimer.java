@@ -0,0 +1,178 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import android.util.Log;
+
+// One thread that keeps any number of timeouts in a ring of buckets, one bucket per tick.
+// Scheduling and cancelling are O(1) and never block, which suits deadlines that
+// are set by the thousand and nearly always cancelled (see PokerGame action deadlines).
+// Timeouts fire up to one tick late, never early. Tasks run on the timer thread, so they
+// should only hand work over (e.g. PokerGame.post).
+public class HashedWheelTimer {
+
+	private static final int PENDING = 0, CANCELLED = 1, EXPIRED = 2;
+	private static final AtomicIntegerFieldUpdater<Entry> STATE =
+			AtomicIntegerFieldUpdater.newUpdater(Entry.class, "state");
+
+	private final class Entry implements Clock.Timeout {
+		final Runnable task;
+		final long deadline;          // in ticks
+		long rounds;                  // full turns of the wheel left
+		volatile int state;
+		Entry next, prev;
+
+		Entry(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		// Takes the entry out of the pending state, only one caller succeeds
+		boolean settle(int newState) {
+			if (STATE.compareAndSet(this, PENDING, newState)) {
+				pending.decrementAndGet();
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public void cancel() {
+			// Unlinked from its bucket when the timer passes it
+			settle(CANCELLED);
+		}
+	}
+
+	private final long tickNanos;
+	private final Entry[] wheel;     // bucket heads, only touched by the timer thread
+	private final int mask;
+	private final Queue<Entry> added = new ConcurrentLinkedQueue<Entry>();
+	private final AtomicInteger pending = new AtomicInteger();
+	private final long start;
+	private final Thread thread;
+
+	// ticksPerWheel is rounded up to a power of two
+	public HashedWheelTimer(String name, long tickMillis, int ticksPerWheel) {
+		int size = 1;
+		while (size < ticksPerWheel)
+			size <<= 1;
+		this.tickNanos = tickMillis * 1000000;
+		this.wheel = new Entry[size];
+		this.mask = size - 1;
+		this.start = System.nanoTime();
+		this.thread = new Thread(name) {
+			@Override
+			public void run() {
+				work();
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public Clock.Timeout schedule(Runnable task, long delayMillis) {
+		// Tick number of the deadline, rounded up so a timeout never fires early
+		long elapsed = System.nanoTime() - start + Math.max(0, delayMillis) * 1000000;
+		Entry e = new Entry(task, (elapsed + tickNanos - 1) / tickNanos);
+		pending.incrementAndGet();
+		added.add(e);
+		return e;
+	}
+
+	// Timeouts that did not fire and were not cancelled
+	public int getPending() {
+		return pending.get();
+	}
+
+	public void stop() {
+		thread.interrupt();
+	}
+
+	private void work() {
+		long current = 0;
+		while (true) {
+			long wakeup = start + (current + 1) * tickNanos;
+			long sleep;
+			while ((sleep = wakeup - System.nanoTime()) > 0) {
+				try {
+					Thread.sleep((sleep + 999999) / 1000000);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+			current++;
+			transferAdded(current);
+			expire(current);
+		}
+	}
+
+	private void transferAdded(long current) {
+		Entry e;
+		while ((e = added.poll()) != null) {
+			if (e.state != PENDING)
+				continue;
+			long deadline = Math.max(e.deadline, current);
+			e.rounds = (deadline - current) / wheel.length;
+			int bucket = (int) (deadline & mask);
+			e.next = wheel[bucket];
+			e.prev = null;
+			if (e.next != null)
+				e.next.prev = e;
+			wheel[bucket] = e;
+		}
+	}
+
+	private void expire(long current) {
+		int bucket = (int) (current & mask);
+		Entry e = wheel[bucket];
+		while (e != null) {
+			Entry next = e.next;
+			if (e.state != PENDING) {
+				remove(bucket, e);
+			} else if (e.rounds > 0) {
+				e.rounds--;
+			} else {
+				remove(bucket, e);
+				if (e.settle(EXPIRED)) {
+					try {
+						e.task.run();
+					} catch (RuntimeException ex) {
+						Log.e("wePoker - Timer", "Timer task failed", ex);
+					}
+				}
+			}
+			e = next;
+		}
+	}
+
+	private void remove(int bucket, Entry e) {
+		if (e.prev != null)
+			e.prev.next = e.next;
+		else
+			wheel[bucket] = e.next;
+		if (e.next != null)
+			e.next.prev = e.prev;
+		e.next = e.prev = null;
+	}
+}
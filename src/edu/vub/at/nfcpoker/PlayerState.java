@@ -40,6 +40,9 @@ public class PlayerState implements Comparable<PlayerState> {
 	// Round-specific (roundTable)
 	public volatile ClientActionType roundActionType;
 	public volatile int roundMoney;
+
+	// Extra time to answer left for this game, see PokerGame.setActionTimeout
+	public transient volatile long timeBank;
 	
 	public PlayerState(Connection connection, int clientId, int money, String name, int avatar) {
 		this.connection = connection;
@@ -16,19 +16,22 @@
  * with this program; if not, write to the Free Software Foundation, Inc.,
  * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
  */
-
 package edu.vub.at.nfcpoker;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
-import java.util.TreeMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import android.util.Log;
 
@@ -36,221 +39,420 @@ import com.esotericsoftware.kryonet.Connection;
 
 import edu.vub.at.commlib.CommLib;
 import edu.vub.at.commlib.Future;
+import edu.vub.at.commlib.Future.FutureListener;
+import edu.vub.at.nfcpoker.comm.BroadcastSerialization;
 import edu.vub.at.nfcpoker.comm.Message;
 import edu.vub.at.nfcpoker.comm.Message.ClientAction;
 import edu.vub.at.nfcpoker.comm.Message.ClientActionMessage;
 import edu.vub.at.nfcpoker.comm.Message.ClientActionType;
+import edu.vub.at.nfcpoker.comm.Message.PlayerInfoMessage;
 import edu.vub.at.nfcpoker.comm.Message.ReceiveHoleCardsMessage;
 import edu.vub.at.nfcpoker.comm.Message.ReceivePublicCards;
 import edu.vub.at.nfcpoker.comm.Message.RequestClientActionFutureMessage;
 import edu.vub.at.nfcpoker.comm.Message.ResetMessage;
 import edu.vub.at.nfcpoker.comm.Message.RoundWinnersDeclarationMessage;
+import edu.vub.at.nfcpoker.comm.Message.SeatState;
 import edu.vub.at.nfcpoker.comm.Message.StateChangeMessage;
+import edu.vub.at.nfcpoker.comm.Message.TableButtonsMessage;
+import edu.vub.at.nfcpoker.comm.Message.TableStateMessage;
+import edu.vub.at.nfcpoker.comm.Message.TableUpdateMessage;
+import edu.vub.at.nfcpoker.comm.Message.ToastMessage;
 import edu.vub.at.nfcpoker.ui.ServerViewInterface;
 
-public class PokerGame extends Thread {
+// One table. The game is a state machine that never blocks: it advances on events
+// (players joining or leaving, client actions arriving, timers firing) which are
+// handled one at a time, in order, on a shared executor. All game state below is
+// only touched from those events, so a table costs no thread of its own while it
+// waits for its players.
+public class PokerGame {
 	
 	@SuppressWarnings("serial")
 	public class RoundEndedException extends Exception {}
 
+	// Decides what happens when an event of the table throws. Called on the event thread.
+	public interface FailureHandler {
+		void eventFailed(PokerGame game, RuntimeException e);
+	}
+
+	// A failed event may leave the hand half-applied (betting without anybody asked to act),
+	// so the table abandons the hand and deals a new one.
+	public static final FailureHandler RESET_TABLE = new FailureHandler() {
+		@Override
+		public void eventFailed(PokerGame game, RuntimeException e) {
+			Log.e("wePoker - PokerGame", "Event failed, resetting the table", e);
+			game.resetInternalState();
+			game.startHand();
+		}
+	};
+
+	// Lets the failure escape from the executor, for simulations and tests
+	public static final FailureHandler RETHROW = new FailureHandler() {
+		@Override
+		public void eventFailed(PokerGame game, RuntimeException e) {
+			throw e;
+		}
+	};
+
 	// Blinds
-	private static final int SMALL_BLIND = 5;
-	private static final int BIG_BLIND = 10;
+	public static final int SMALL_BLIND = 5;
+	public static final int BIG_BLIND = 10;
+
+	// Pause between two hands
+	private static final long NEXT_HAND_DELAY_MILLIS = 10000;
+
+	// Time a player gets to act, after which they check if they can and fold otherwise
+	public static final long DEFAULT_ACTION_TIMEOUT_MILLIS = 30000;
+	private static final long LATE_ANSWER_MILLIS = 60000;
+
+	// Events handled before a table gives its executor thread to the next table
+	private static final int EVENT_BATCH = 64;
+
+	private static Executor sharedExecutor;
 	
 	// Communication
 	private ConcurrentSkipListMap<Integer, Future<ClientAction>> actionFutures = new ConcurrentSkipListMap<Integer, Future<ClientAction>>();  
+	private Map<Integer, ClientAction> receivedActions = new HashMap<Integer, ClientAction>();
+	private Map<Integer, Deadline> deadlines = new HashMap<Integer, Deadline>();
+	private volatile long actionTimeout = DEFAULT_ACTION_TIMEOUT_MILLIS;
+	private volatile long timeBank = 0;
 
 	// Rounds
 	public volatile PokerGameState gameState;
 	private List<PlayerState> clientsIdsInRoundOrder = Collections.synchronizedList(new LinkedList<PlayerState>());
 	private ConcurrentSkipListMap<Integer, PlayerState> playerStates  = new ConcurrentSkipListMap<Integer, PlayerState>();
 	private int chipsPool = 0;
+	private final Deck deck = new Deck();
+
+	// Current hand
+	private List<PlayerState> currentPlayers;
+	private CardSet cardPool;
+	private TableButtonsMessage buttons;
+	private Clock.Timeout nextHand;
+
+	// Current betting round (roundTable)
+	private boolean betting;
+	private int minBet;
+	private boolean increasedBet;
+	private int tableRound;
+	private int playersRemaining;
+	private int turn;
 	
 	// GUI
 	private ServerViewInterface gui;
 
+	// Serializes broadcasts once for all players, null to let every connection serialize them
+	private volatile BroadcastSerialization serialization;
+
+	// Events
+	private final Executor executor;
+	private final Queue<Runnable> events = new ConcurrentLinkedQueue<Runnable>();
+	private final AtomicBoolean draining = new AtomicBoolean();
+	private final FailureHandler failureHandler;
+	private final Runnable drainer = new Runnable() {
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+
+	private final TableMetrics metrics = new TableMetrics();
+	private final SpectatorLane spectators = new SpectatorLane(this, metrics);
+
+	// What the current event broadcasts, sent as one frame when it is done, see flushUpdates
+	private final List<Message> updates = new ArrayList<Message>();
+	// Version of the table state, the number of the last frame sent
+	private int seq;
+
+	// Time, and whether to log the course of the game (simulations turn this off)
+	private final Clock clock;
+	private volatile boolean logging = true;
+
 	// Terminator
-	private boolean finished;
+	private volatile boolean finished;
 	
 	public PokerGame(ServerViewInterface gui) {
+		this(gui, getSharedExecutor(), Clock.SYSTEM, RESET_TABLE);
+	}
+
+	// Events run on executor, which may be shared by many tables.
+	public PokerGame(ServerViewInterface gui, Executor executor, Clock clock, FailureHandler failureHandler) {
 		this.gameState = PokerGameState.STOPPED;
 		this.gui = gui;
+		this.executor = executor;
+		this.clock = clock;
+		this.failureHandler = failureHandler;
+	}
+
+	// A small pool for all tables in this process, threads are only busy while events are handled.
+	public static synchronized Executor getSharedExecutor() {
+		if (sharedExecutor == null) {
+			int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+			sharedExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "wePoker - Table");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return sharedExecutor;
 	}
-	
-	public void run() {
-		while (true) {
-			try {
-			chipsPool = 0;
-			gui.resetCards();
-			updatePoolMoney();
-			actionFutures.clear();
-			while (clientsIdsInRoundOrder.size() < 2) {
-					Log.d("wePoker - PokerGame", "# of clients < 2, changing state to stopped");
-					newState(PokerGameState.WAITING_FOR_PLAYERS);
-					synchronized(this) {
-						try {
-							this.wait();
-						} catch (InterruptedException e) {
-							Log.d("wePoker - PokerGame", "Thread interrupted while waiting for more players");
-							resetInternalState();
-						}
-					}
-			}
 
-			List<PlayerState> currentPlayers = new ArrayList<PlayerState>();
-			Set<Card> cardPool = new HashSet<Card>();
+	public void setLogging(boolean logging) {
+		this.logging = logging;
+	}
 
-			synchronized (clientsIdsInRoundOrder) {
-				currentPlayers.addAll(clientsIdsInRoundOrder);
-			}
-			
-			try {
-				Deck deck = new Deck();
-				
-				// Reset player actions
-				for (PlayerState player : currentPlayers) {
-					player.gameMoney = 0;
-					player.gameHoleCards = null;
+	// The serialization of the server all players are connected to
+	public void setSerialization(BroadcastSerialization serialization) {
+		this.serialization = serialization;
+	}
+
+	// millis 0 lets players think forever. Once their time is up, players first use
+	// their time bank: timeBankMillis to spend over the whole game.
+	public void setActionTimeout(long millis, long timeBankMillis) {
+		this.actionTimeout = millis;
+		this.timeBank = timeBankMillis;
+	}
+
+	public void start() {
+		post(new Runnable() {
+			@Override
+			public void run() {
+				if (gameState == PokerGameState.STOPPED) {
+					startHand();
 				}
+			}
+		});
+	}
 
-				// decide on blinds and dealer.
-				PlayerState dealer = currentPlayers.get(currentPlayers.size() - 1);
-				PlayerState smallBlind = currentPlayers.get(0);
-				PlayerState bigBlind = currentPlayers.get(1);
-				gui.setPlayerButtons(dealer, smallBlind, bigBlind);
-				
-				// hole cards
-				for (PlayerState player : currentPlayers) {
-					Card preflop[] = deck.drawCards(2);
-					player.gameHoleCards = preflop;
-					Connection c = player.connection;
-					if (c == null) {
-						player.roundActionType = ClientActionType.Fold;
-						continue;
+	// Events
+
+	// Queues an event for this table. Events run one at a time, in the order they were posted.
+	private void post(Runnable event) {
+		events.add(event);
+		if (draining.compareAndSet(false, true)) {
+			executor.execute(drainer);
+		}
+	}
+
+	private void drain() {
+		long start = System.nanoTime();
+		int handled = 0;
+		try {
+			Runnable event;
+			while (handled < EVENT_BATCH && (event = events.poll()) != null) {
+				handled++;
+				try {
+					try {
+						event.run();
+					} finally {
+						flushUpdates();
 					}
-					c.sendTCP(new ReceiveHoleCardsMessage(preflop[0], preflop[1]));
+				} catch (RuntimeException e) {
+					failureHandler.eventFailed(this, e);
 				}
-				newState(PokerGameState.PREFLOP);
-				roundTable(currentPlayers);
-				
-				
-				// flop cards
-				Card[] flop = deck.drawCards(3);
-				cardPool.addAll(Arrays.asList(flop));
-				gui.revealCards(flop);
-				broadcast(new ReceivePublicCards(flop));
-				newState(PokerGameState.FLOP);
-				roundTable(currentPlayers);
-
-				// turn cards
-				Card[] turn = deck.drawCards(1);
-				cardPool.add(turn[0]);
-				gui.revealCards(turn);
-				broadcast(new ReceivePublicCards(turn));
-				newState(PokerGameState.TURN);
-				roundTable(currentPlayers);
-				
-				// river cards
-				Card[] river = deck.drawCards(1);
-				cardPool.add(river[0]);
-				gui.revealCards(river);
-				broadcast(new ReceivePublicCards(river));
-				newState(PokerGameState.RIVER);
-				roundTable(currentPlayers);					
-			} catch (RoundEndedException e1) {
-				/* ignore */
-				Log.d("wePoker - PokerGame", "Everybody folded at round " + gameState);
 			}
+		} finally {
+			metrics.events += handled;
+			metrics.busyNanos += System.nanoTime() - start;
+			draining.set(false);
+		}
+		if (!events.isEmpty() && draining.compareAndSet(false, true)) {
+			executor.execute(drainer);
+		}
+	}
+
+	// Hands
+
+	private void startHand() {
+		if (finished) return;
+		nextHand = null;
+		buttons = null;
+		chipsPool = 0;
+		gui.resetCards();
+		updatePoolMoney();
+		actionFutures.clear();
+		receivedActions.clear();
+		cancelDeadlines();
+		if (clientsIdsInRoundOrder.size() < 2) {
+			// addPlayer and reAddPlayer start the hand once there are enough players
+			if (logging) Log.d("wePoker - PokerGame", "# of clients < 2, changing state to stopped");
+			newState(PokerGameState.WAITING_FOR_PLAYERS);
+			return;
+		}
+
+		currentPlayers = new ArrayList<PlayerState>();
+		cardPool = new CardSet();
+
+		synchronized (clientsIdsInRoundOrder) {
+			currentPlayers.addAll(clientsIdsInRoundOrder);
+		}
+		
+		try {
+			deck.shuffle();
 			
-			// results
-			boolean endedPrematurely = gameState != PokerGameState.RIVER;
-			newState(PokerGameState.END_OF_ROUND);
-			
-			ArrayList<PlayerState> remainingPlayers = new ArrayList<PlayerState>();
+			// Reset player actions
 			for (PlayerState player : currentPlayers) {
-				if (player.roundActionType != ClientActionType.Fold &&
-					player.roundActionType != ClientActionType.Unknown) {
-					remainingPlayers.add(player);
-				}
+				player.gameMoney = 0;
+				player.gameHoleCards = null;
 			}
+
+			// decide on blinds and dealer.
+			PlayerState dealer = currentPlayers.get(currentPlayers.size() - 1);
+			PlayerState smallBlind = currentPlayers.get(0);
+			PlayerState bigBlind = currentPlayers.get(1);
+			gui.setPlayerButtons(dealer, smallBlind, bigBlind);
 			
-			if (endedPrematurely) {
-				// If only one player left
-				if (remainingPlayers.size() == 1) {
-					final PlayerState lastPlayer = remainingPlayers.get(0);
-					addMoney(lastPlayer, chipsPool);
-
-					List<String> winnerNames = new ArrayList<String>();
-					winnerNames.add(lastPlayer.name);
-					
-					broadcast(new RoundWinnersDeclarationMessage(remainingPlayers, winnerNames, false, null, chipsPool));
-					gui.showWinners(remainingPlayers, chipsPool);
-				} else {
-					Log.wtf("wePoker - PokerGame", "Ended prematurely with more than one player?");
-				}
-			} else {
-				// Calculate who has the best cards
-				TreeMap<PlayerState, Hand> hands = new TreeMap<PlayerState, Hand>();
-				Hand bestHand = null;
-				for (PlayerState player : remainingPlayers) {
-					final Hand playerHand = Hand.makeBestHand(cardPool, Arrays.asList(player.gameHoleCards));
-					if (bestHand == null || bestHand.compareTo(playerHand) < 0)
-						bestHand = playerHand;
-					hands.put(player, playerHand);
-				}
-				if (!hands.isEmpty()) {
-					List<PlayerState> bestPlayers = findWinners(hands, bestHand);
-					
-					List<String> winnerNames = new ArrayList<String>();
-					for (PlayerState player: bestPlayers) {
-						addMoney(player, chipsPool / bestPlayers.size());
-						winnerNames.add(player.name);
-					}
-					
-					broadcast(new RoundWinnersDeclarationMessage(bestPlayers, winnerNames, true, bestHand, chipsPool));
-					gui.showWinners(bestPlayers, chipsPool);
+			// hole cards
+			for (PlayerState player : currentPlayers) {
+				Card preflop[] = deck.drawCards(2);
+				player.gameHoleCards = preflop;
+				Connection c = player.connection;
+				if (c == null) {
+					player.roundActionType = ClientActionType.Fold;
+					continue;
 				}
+				send(c, new ReceiveHoleCardsMessage(preflop[0], preflop[1]));
 			}
-			
-			GCPlayers();
-			cycleClientsInGame();
-			
-			// finally, sleep
-			Thread.sleep(10000);
+			newState(PokerGameState.PREFLOP);
+			roundTable(currentPlayers);
+		} catch (RoundEndedException e) {
+			endHand();
+		}
+	}
 
-			} catch (InterruptedException e) {
-				if (isFinished()) {
-					Log.d("wePoker - PokerGame", "interrupted, quitting");
-					resetInternalState();
-					return;
-				} else {
-					Log.d("wePoker - PokerGame", "interrupted, resetting state.");
-					resetInternalState();
+	// Deals the next street once a betting round is over, or ends the hand after the river.
+	private void nextStreet() throws RoundEndedException {
+		switch (gameState) {
+		case PREFLOP:
+			// flop cards
+			Card[] flop = deck.drawCards(3);
+			cardPool.addAll(flop);
+			gui.revealCards(flop);
+			update(new ReceivePublicCards(flop));
+			newState(PokerGameState.FLOP);
+			roundTable(currentPlayers);
+			break;
+		case FLOP:
+			// turn cards
+			Card[] turn = deck.drawCards(1);
+			cardPool.add(turn[0]);
+			gui.revealCards(turn);
+			update(new ReceivePublicCards(turn));
+			newState(PokerGameState.TURN);
+			roundTable(currentPlayers);
+			break;
+		case TURN:
+			// river cards
+			Card[] river = deck.drawCards(1);
+			cardPool.add(river[0]);
+			gui.revealCards(river);
+			update(new ReceivePublicCards(river));
+			newState(PokerGameState.RIVER);
+			roundTable(currentPlayers);
+			break;
+		default:
+			throw new RoundEndedException();
+		}
+	}
+
+	private void endHand() {
+		betting = false;
+		if (gameState != PokerGameState.RIVER) {
+			if (logging) Log.d("wePoker - PokerGame", "Everybody folded at round " + gameState);
+		}
+		
+		// results
+		boolean endedPrematurely = gameState != PokerGameState.RIVER;
+		newState(PokerGameState.END_OF_ROUND);
+		
+		ArrayList<PlayerState> remainingPlayers = new ArrayList<PlayerState>();
+		for (PlayerState player : currentPlayers) {
+			if (player.roundActionType != ClientActionType.Fold &&
+				player.roundActionType != ClientActionType.Unknown) {
+				remainingPlayers.add(player);
+			}
+		}
+		
+		if (endedPrematurely) {
+			// If only one player left
+			if (remainingPlayers.size() == 1) {
+				final PlayerState lastPlayer = remainingPlayers.get(0);
+				addMoney(lastPlayer, chipsPool);
+				// Nobody has to show
+				update(new RoundWinnersDeclarationMessage(remainingPlayers, chipsPool, false, 0));
+				gui.showWinners(remainingPlayers, chipsPool);
+			} else {
+				if (logging) Log.wtf("wePoker - PokerGame", "Ended prematurely with more than one player?");
+			}
+		} else {
+			// Calculate who has the best cards
+			if (!remainingPlayers.isEmpty()) {
+				long[] holeCards = new long[remainingPlayers.size()];
+				for (int i = 0; i < holeCards.length; i++)
+					holeCards[i] = CardSet.bits(remainingPlayers.get(i).gameHoleCards);
+				Showdown showdown = Showdown.evaluate(HandEvaluators.getDefault(), cardPool, holeCards);
+				List<PlayerState> bestPlayers = findWinners(remainingPlayers, showdown);
+				
+				int share = chipsPool / bestPlayers.size();
+				for (PlayerState player: bestPlayers) {
+					addMoney(player, share);
 				}
+				
+				update(new RoundWinnersDeclarationMessage(bestPlayers, share, true, showdown.bestStrength));
+				gui.showWinners(bestPlayers, chipsPool);
 			}
 		}
+		
+		GCPlayers();
+		cycleClientsInGame();
+		metrics.hands++;
+		
+		// finally, pause before the next hand
+		if (finished) return;
+		final Clock.Timeout[] timeout = new Clock.Timeout[1];
+		timeout[0] = clock.schedule(new Runnable() {
+			@Override
+			public void run() {
+				post(new Runnable() {
+					@Override
+					public void run() {
+						if (nextHand == timeout[0]) {
+							startHand();
+						}
+					}
+				});
+			}
+		}, NEXT_HAND_DELAY_MILLIS);
+		nextHand = timeout[0];
 	}
 
 	private void resetInternalState() {
-		broadcast(new ResetMessage());
+		if (nextHand != null) {
+			nextHand.cancel();
+			nextHand = null;
+		}
+		betting = false;
+		actionFutures.clear();
+		receivedActions.clear();
+		cancelDeadlines();
+
+		update(new ResetMessage());
 		gui.resetGame();
 		chipsPool = 0;
 		
 		for (PlayerState ps : playerStates.values()) {
 			ps.money = 2000;
+			ps.timeBank = timeBank;
 		}
 	}
 
-	public List<PlayerState> findWinners(TreeMap<PlayerState, Hand> hands, final Hand bestHand) {
-		List<PlayerState> bestPlayers = new ArrayList<PlayerState>();
-
-		for (PlayerState nextPlayer : hands.keySet()) {
-			Hand nextHand = hands.get(nextPlayer);
-			if (nextHand.compareTo(bestHand) == 0) {
-				bestPlayers.add(nextPlayer);
-			}
+	public List<PlayerState> findWinners(List<PlayerState> players, Showdown showdown) {
+		List<PlayerState> bestPlayers = new ArrayList<PlayerState>(showdown.winners.length);
+		for (int i : showdown.winners) {
+			bestPlayers.add(players.get(i));
 		}
-
 		return bestPlayers;
 	}
 	
@@ -261,29 +463,163 @@ public class PokerGame extends Thread {
 		}
 	}
 	
-	private void askClientActions(PlayerState player, int round) {
+	private void askClientActions(final PlayerState player, int round) {
 		if ((player.roundActionType == ClientActionType.Fold) ||
 			(player.roundActionType == ClientActionType.AllIn)) {
 			return;
 		}
 		
-		Future<ClientAction> fut = CommLib.createFuture();
-		actionFutures.put(player.clientId, fut);
-		Log.d("wePoker - PokerGame", "Creating & Sending new future " + fut.getFutureId() + " to " + player.clientId);
 		Connection c = player.connection;
+		final Future<ClientAction> fut = c == null ? new Future<ClientAction>() : CommLib.createFuture(c, getFutureTtl());
+		actionFutures.put(player.clientId, fut);
+		receivedActions.remove(player.clientId);
+		if (logging) Log.d("wePoker - PokerGame", "Creating & Sending new future " + fut.getFutureId() + " to " + player.clientId);
 		if (c == null) {
 			// If client disconnected -> Fold
 			player.roundActionType = ClientActionType.Fold;
-			broadcast(new ClientActionMessage(new ClientAction(ClientActionType.Fold), player.clientId));
+			update(new ClientActionMessage(new ClientAction(ClientActionType.Fold), player.clientId));
+			return;
+		}
+		// Listen before sending, the answer may come back before sendTCP returns
+		listen(player, fut);
+		startDeadline(player, fut);
+		send(c, new RequestClientActionFutureMessage(fut, round));
+	}
+
+	private void listen(final PlayerState player, final Future<ClientAction> fut) {
+		fut.addListener(new FutureListener<ClientAction>() {
+			@Override
+			public void resolve(final ClientAction value) {
+				post(new Runnable() {
+					@Override
+					public void run() {
+						actionReceived(player, fut, value);
+					}
+				});
+			}
+		});
+	}
+
+	// The player is back on connection c while we wait for their action. Futures are
+	// numbered per connection, so the question moves to a future of c; the deadline keeps running.
+	private void moveActionFuture(PlayerState player, Connection c) {
+		Future<ClientAction> old = actionFutures.get(player.clientId);
+		Future<ClientAction> fut = CommLib.createFuture(c, getFutureTtl());
+		actionFutures.put(player.clientId, fut);
+		CommLib.futures.cancel(old);
+		listen(player, fut);
+		Deadline d = deadlines.get(player.clientId);
+		if (d != null)
+			d.fut = fut;
+	}
+
+	// Unanswered requests are forgotten a while after the player's time is up
+	private long getFutureTtl() {
+		return actionTimeout == 0 ? 0 : actionTimeout + timeBank + LATE_ANSWER_MILLIS;
+	}
+
+	private void actionReceived(PlayerState player, Future<ClientAction> fut, ClientAction ca) {
+		if (actionFutures.get(player.clientId) != fut) {
+			// Answer to a question from an earlier hand or round
+			return;
+		}
+		cancelDeadline(player);
+		receivedActions.put(player.clientId, ca);
+		metrics.actions++;
+		if (betting) {
+			try {
+				advanceRound();
+			} catch (RoundEndedException e) {
+				endHand();
+			}
+		}
+	}
+
+	// Action deadlines
+
+	private class Deadline implements Runnable {
+		final PlayerState player;
+		Future<ClientAction> fut;   // moves along when the player reconnects
+		Clock.Timeout timeout;
+		long bankStart = -1;      // when the time bank started running
+
+		Deadline(PlayerState player, Future<ClientAction> fut) {
+			this.player = player;
+			this.fut = fut;
+		}
+
+		// On the timer thread
+		@Override
+		public void run() {
+			post(new Runnable() {
+				@Override
+				public void run() {
+					deadlinePassed(Deadline.this);
+				}
+			});
+		}
+	}
+
+	private void startDeadline(PlayerState player, Future<ClientAction> fut) {
+		cancelDeadline(player);
+		if (actionTimeout <= 0) return;
+		Deadline d = new Deadline(player, fut);
+		d.timeout = clock.schedule(d, actionTimeout);
+		deadlines.put(player.clientId, d);
+	}
+
+	private void cancelDeadline(PlayerState player) {
+		Deadline d = deadlines.remove(player.clientId);
+		if (d == null) return;
+		d.timeout.cancel();
+		if (d.bankStart >= 0) {
+			player.timeBank = Math.max(0, player.timeBank - (clock.currentTimeMillis() - d.bankStart));
+		}
+	}
+
+	private void cancelDeadlines() {
+		for (Deadline d : deadlines.values()) {
+			d.timeout.cancel();
+		}
+		deadlines.clear();
+	}
+
+	private void deadlinePassed(Deadline d) {
+		PlayerState player = d.player;
+		if (deadlines.get(player.clientId) != d || receivedActions.containsKey(player.clientId)) {
+			// Answered or asked again in the meantime
+			return;
+		}
+		Connection c = player.connection;
+		if (d.bankStart < 0 && player.timeBank > 0) {
+			d.bankStart = clock.currentTimeMillis();
+			d.timeout = clock.schedule(d, player.timeBank);
+			if (c != null)
+				send(c, new ToastMessage("Using your time bank, " + player.timeBank / 1000 + "s left"));
 			return;
 		}
-		c.sendTCP(new RequestClientActionFutureMessage(fut, round));
-		if (fut != null && !fut.isResolved()) {
-			fut.setFutureListener(null);
+		deadlines.remove(player.clientId);
+		player.timeBank = 0;
+
+		// Check when that costs nothing, otherwise fold
+		ClientAction ca = player.roundMoney >= minBet
+				? new ClientAction(ClientActionType.Check, player.roundMoney, 0)
+				: new ClientAction(ClientActionType.Fold, player.roundMoney, 0);
+		ca.timedOut = true;
+		if (logging) Log.d("wePoker - PokerGame", "Player " + player.clientId + " ran out of time: " + ca);
+		CommLib.futures.resolve(d.fut, ca);
+	}
+
+	// Whether player was asked for an action that did not arrive yet (a null answer counts as a fold)
+	private boolean isWaitingFor(PlayerState player) {
+		if ((player.roundActionType == ClientActionType.Fold) ||
+			(player.roundActionType == ClientActionType.AllIn)) {
+			return false;
 		}
+		return actionFutures.containsKey(player.clientId) && !receivedActions.containsKey(player.clientId);
 	}
 	
-	private boolean verifyClientActions(PlayerState player, int round, int minBet) throws InterruptedException {
+	private boolean verifyClientActions(PlayerState player, int round, int minBet) {
 		if ((player.roundActionType == ClientActionType.Fold) ||
 			(player.roundActionType == ClientActionType.AllIn)) {
 			return true;
@@ -291,7 +627,7 @@ public class PokerGame extends Thread {
 		
 		Future<ClientAction> fut = actionFutures.get(player.clientId);
 		if (fut == null) return true;
-		ClientAction ca = fut.get();
+		ClientAction ca = receivedActions.get(player.clientId);
 		if (ca == null) return true;
 		
 		switch (ca.actionType) {
@@ -316,7 +652,7 @@ public class PokerGame extends Thread {
 				return true;
 			}
 		default:
-			Log.d("wePoker - PokerGame", "Unknown client action message (processClientActions)");
+			if (logging) Log.d("wePoker - PokerGame", "Unknown client action message (processClientActions)");
 			return false;
 		}
 	}
@@ -325,7 +661,7 @@ public class PokerGame extends Thread {
 	// - Updates money
 	// - Broadcasts actions
 	// Returns minimum bet
-	private int processClientActions(PlayerState player, int round, int minBet) throws InterruptedException {
+	private int processClientActions(PlayerState player, int round, int minBet) {
 		if (player.roundActionType == ClientActionType.Fold ||
 			player.roundActionType == ClientActionType.AllIn) {
 			return minBet;
@@ -333,13 +669,13 @@ public class PokerGame extends Thread {
 		
 		Future<ClientAction> fut = actionFutures.get(player.clientId);
 		if (fut == null) {
-			broadcast(new ClientActionMessage(new ClientAction(ClientActionType.Fold, player.roundMoney, 0), player.clientId));
+			update(new ClientActionMessage(new ClientAction(ClientActionType.Fold, player.roundMoney, 0), player.clientId));
 			player.roundActionType = ClientActionType.Fold;
 			return minBet;
 		}
-		ClientAction ca = fut.get();
+		ClientAction ca = receivedActions.get(player.clientId);
 		if (ca == null) {
-			broadcast(new ClientActionMessage(new ClientAction(ClientActionType.Fold, player.roundMoney, 0), player.clientId));
+			update(new ClientActionMessage(new ClientAction(ClientActionType.Fold, player.roundMoney, 0), player.clientId));
 			player.roundActionType = ClientActionType.Fold;
 			return minBet;
 		}
@@ -350,7 +686,7 @@ public class PokerGame extends Thread {
 
 		ca.handled = true;
 		player.roundActionType = ca.actionType;
-		broadcast(new ClientActionMessage(ca, player.clientId));
+		update(new ClientActionMessage(ca, player.clientId));
 		
 		switch (player.roundActionType) {
 		case Fold:
@@ -361,7 +697,7 @@ public class PokerGame extends Thread {
 			// Client sends diffMoney
 			addBet(player, ca.extraMoney);
 			if (player.roundMoney < minBet) {
-				Log.wtf("wePoker - PokerGame", "Invalid extra money");
+				if (logging) Log.wtf("wePoker - PokerGame", "Invalid extra money");
 				return minBet;
 			}
 			return player.roundMoney;
@@ -370,7 +706,7 @@ public class PokerGame extends Thread {
 			addBet(player, ca.extraMoney);
 			return minBet + ca.extraMoney;
 		default:
-			Log.d("wePoker - PokerGame", "Unknown client action message");
+			if (logging) Log.d("wePoker - PokerGame", "Unknown client action message");
 			return minBet;
 		}
 	}
@@ -379,22 +715,27 @@ public class PokerGame extends Thread {
 		player.roundMoney += extra;
 		player.money -= extra;
 		if (player.money < 0) {
-			Log.wtf("wePoker - PokerGame", "Player bets more money than he/she owns!");
+			if (logging) Log.wtf("wePoker - PokerGame", "Player bets more money than he/she owns!");
 			player.money = 0;
 		}
-		Log.d("wePoker - PokerGame", "Player "+player.name+" bets \u20AC"+extra+" extra");
+		if (logging) Log.d("wePoker - PokerGame", "Player "+player.name+" bets \u20AC"+extra+" extra");
 		gui.updatePlayerStatus(player);
 		addChipsToPool(extra);
 	}
 
-	public void cheatMoney(int clientId, int amount) {
-		PlayerState player = playerStates.get(clientId);
-		if (player == null) {
-			Log.d("wePoker - PokerGame", "Player "+clientId+" does not exist anymore. Cannot add cheat money.");
-			return;
-		}
-		Log.d("wePoker - PokerGame", "Player "+clientId+" cheats for "+amount+".");
-		addMoney(player, amount);
+	public void cheatMoney(final int clientId, final int amount) {
+		post(new Runnable() {
+			@Override
+			public void run() {
+				PlayerState player = playerStates.get(clientId);
+				if (player == null) {
+					if (logging) Log.d("wePoker - PokerGame", "Player "+clientId+" does not exist anymore. Cannot add cheat money.");
+					return;
+				}
+				if (logging) Log.d("wePoker - PokerGame", "Player "+clientId+" cheats for "+amount+".");
+				addMoney(player, amount);
+			}
+		});
 	}
 	
 	private void addMoney(PlayerState player, int extra) {
@@ -409,9 +750,11 @@ public class PokerGame extends Thread {
 	//   Handle cases where player 1 bets (100) and player 2 raises (200)
 	//     -> Should be handled by the second tableRound (1) && increasedBet
 	//   Stop early if not enough players
-	private void roundTable(List<PlayerState> clientOrder) throws RoundEndedException, InterruptedException {
-		int minBet = 0;
-		boolean increasedBet = true;
+	// The round then advances each time an answer arrives, see advanceRound.
+	private void roundTable(List<PlayerState> clientOrder) throws RoundEndedException {
+		minBet = 0;
+		increasedBet = true;
+		tableRound = 0;
 
 		if (clientOrder.size() < 2) {
 			throw new RoundEndedException();
@@ -422,6 +765,8 @@ public class PokerGame extends Thread {
 			player.roundActionType = ClientActionType.Unknown;
 			player.roundMoney = 0;
 			actionFutures.remove(player.clientId);
+			receivedActions.remove(player.clientId);
+			cancelDeadline(player);
 		}
 		
 		// Add blinds
@@ -437,32 +782,47 @@ public class PokerGame extends Thread {
 			addBet(bigBlind, BIG_BLIND);
 			minBet = BIG_BLIND;
 			
-			broadcast(new Message.TableButtonsMessage(dealer.clientId, smallBlind.clientId, SMALL_BLIND, bigBlind.clientId, BIG_BLIND));			
+			buttons = new TableButtonsMessage(dealer.clientId, smallBlind.clientId, SMALL_BLIND, bigBlind.clientId, BIG_BLIND, clientOrder.size());
+			update(buttons);			
 		}
-		
-		// Two table rounds if needed
-		for (int tableRound = 0; tableRound < 2 && increasedBet; tableRound++) {
-			int playersRemaining = clientOrder.size();
-			increasedBet = false;
-
-			// Ask all client actions (in parallel)
-			if (tableRound == 0) {
-				for (PlayerState player : clientOrder) {
-					askClientActions(player, tableRound);
-				}
+
+		betting = true;
+		startTableRound();
+		advanceRound();
+	}
+
+	// Two table rounds if needed
+	private void startTableRound() {
+		playersRemaining = currentPlayers.size();
+		increasedBet = false;
+		turn = 0;
+
+		// Ask all client actions (in parallel)
+		if (tableRound == 0) {
+			for (PlayerState player : currentPlayers) {
+				askClientActions(player, tableRound);
 			}
-			
-			// Process the client action (one-by-one, in round order)
-			for (PlayerState player : clientOrder) {
+		}
+	}
+
+	// Process the client actions (one-by-one, in round order) until we have to
+	// wait for an answer or the betting round is over.
+	private void advanceRound() throws RoundEndedException {
+		List<PlayerState> clientOrder = currentPlayers;
+		while (true) {
+			for (; turn < clientOrder.size(); turn++) {
+				PlayerState player = clientOrder.get(turn);
 				// Keep asking for valid input
-				while (!verifyClientActions(player, tableRound, minBet)) {
+				while (true) {
+					if (isWaitingFor(player)) return;
+					if (verifyClientActions(player, tableRound, minBet)) break;
 					askClientActions(player, tableRound);
 				}
 				int newMinBet = processClientActions(player, tableRound, minBet);
 				if (newMinBet > minBet) {
 					increasedBet = true;
 					if (tableRound > 1) {
-						Log.wtf("wePoker - PokerGame", "Increased bet in second round?");
+						if (logging) Log.wtf("wePoker - PokerGame", "Increased bet in second round?");
 					}
 					minBet = newMinBet;
 				}
@@ -470,10 +830,18 @@ public class PokerGame extends Thread {
 					playersRemaining--;
 				}
 				if (playersRemaining <= 1) {
+					betting = false;
 					throw new RoundEndedException();
 				}
 			}
+			tableRound++;
+			if (tableRound >= 2 || !increasedBet) {
+				break;
+			}
+			startTableRound();
 		}
+		betting = false;
+		nextStreet();
 	}
 	
 	
@@ -483,63 +851,201 @@ public class PokerGame extends Thread {
 	}
 
 	private void updatePoolMoney() {
-		broadcast(new Message.PoolMessage(chipsPool));
+		update(new Message.PoolMessage(chipsPool));
 		gui.updatePoolMoney(chipsPool);
 	}
 
 	private void newState(PokerGameState newState) {
-		Log.v("wePoker - PokerGame", "Updating poker game state"+newState.toString());
+		if (logging) Log.v("wePoker - PokerGame", "Updating poker game state"+newState.toString());
 		gameState = newState;
-		broadcast(new StateChangeMessage(newState));
+		update(new StateChangeMessage(newState));
 		gui.updateGameState(newState);
 	}
 
-	public synchronized void addPlayer(Connection c, int clientId, String nickname, int avatar, int money) {
-		Log.v("wePoker - PokerGame", "Adding player "+clientId);
-		PlayerState player = new PlayerState(c, clientId, money, nickname, avatar);
-		playerStates.put(clientId, player);
-		clientsIdsInRoundOrder.add(player);
-		gui.addPlayer(player);
-		c.sendTCP(new StateChangeMessage(gameState));
-		this.notify();
+	// Players
+
+	public void addPlayer(final Connection c, final int clientId, final String nickname, final int avatar, final int money) {
+		post(new Runnable() {
+			@Override
+			public void run() {
+				if (logging) Log.v("wePoker - PokerGame", "Adding player "+clientId);
+				PlayerState player = new PlayerState(c, clientId, money, nickname, avatar);
+				player.timeBank = timeBank;
+				playerStates.put(clientId, player);
+				clientsIdsInRoundOrder.add(player);
+				gui.addPlayer(player);
+				send(c, snapshot(player));
+				update(new PlayerInfoMessage(player));
+				playerJoined();
+			}
+		});
 	}
 
-	public synchronized void reAddPlayer(Connection c, int clientId, String nickname, int avatar, int money) {
-		Log.v("wePoker - PokerGame", "Re-adding player "+clientId);
-	    PlayerState player = playerStates.get(clientId);
-		if (player == null) {
-			addPlayer(c, clientId, nickname, avatar, money);
-			return;
-		}
-		player.connection = c;
-		gui.addPlayer(player);
-		this.notify();
+	public void reAddPlayer(final Connection c, final int clientId, final String nickname, final int avatar, final int money) {
+		post(new Runnable() {
+			@Override
+			public void run() {
+				if (logging) Log.v("wePoker - PokerGame", "Re-adding player "+clientId);
+				PlayerState player = playerStates.get(clientId);
+				if (player == null) {
+					addPlayer(c, clientId, nickname, avatar, money);
+					return;
+				}
+				player.connection = c;
+				if (betting && isWaitingFor(player))
+					moveActionFuture(player, c);
+				gui.addPlayer(player);
+				send(c, snapshot(player));
+				playerJoined();
+			}
+		});
 	}
 
-	public synchronized void setNickname(int clientId, String nickname) {
-		PlayerState player = playerStates.get(clientId);
-		if (player != null) {
-			player.name = nickname;
-			gui.updatePlayerStatus(player);
+	// Sends the current table state to a player that missed updates
+	public void resync(final int clientId) {
+		post(new Runnable() {
+			@Override
+			public void run() {
+				PlayerState player = playerStates.get(clientId);
+				Connection c = player == null ? null : player.connection;
+				if (c != null)
+					send(c, snapshot(player));
+			}
+		});
+	}
+
+	// Spectators
+
+	// c receives what the table broadcasts, without a seat or hole cards
+	public void addSpectator(final Connection c) {
+		post(new Runnable() {
+			@Override
+			public void run() {
+				if (logging) Log.v("wePoker - PokerGame", "Adding spectator " + c);
+				c.sendTCP(snapshot(null));
+				spectators.add(c);
+			}
+		});
+	}
+
+	public void removeSpectator(Connection c) {
+		spectators.remove(c);
+	}
+
+	public boolean isSpectator(Connection c) {
+		return spectators.contains(c);
+	}
+
+	public int getSpectatorCount() {
+		return spectators.size();
+	}
+
+	// Spectators catch up with one table state instead of the updates they missed
+	public void resyncSpectator(final Connection c) {
+		post(new Runnable() {
+			@Override
+			public void run() {
+				if (!spectators.contains(c))
+					return;
+				c.sendTCP(snapshot(null));
+				spectators.caughtUp(c);
+			}
+		});
+	}
+
+	// Tells the spectator lane the write buffer of c drained
+	public void idle(Connection c) {
+		spectators.idle(c);
+	}
+
+	// The table as player sees it, after sending the updates so far. Without a player,
+	// the table as spectators see it.
+	private TableStateMessage snapshot(PlayerState player) {
+		flushUpdates();
+		TableStateMessage tsm = new TableStateMessage();
+		tsm.seq = seq;
+		tsm.gameState = gameState;
+		tsm.pool = chipsPool;
+		tsm.minBet = betting ? minBet : 0;
+		tsm.board = cardPool == null ? new Card[0] : cardPool.toArray();
+		tsm.dealerId = buttons == null ? -1 : buttons.dealerId;
+		tsm.smallId = buttons == null ? -1 : buttons.smallId;
+		tsm.bigId = buttons == null ? -1 : buttons.bigId;
+		if (currentPlayers != null) {
+			for (PlayerState p : currentPlayers) {
+				if (p.roundActionType != ClientActionType.Fold)
+					tsm.playersInHand++;
+			}
 		}
+		List<SeatState> seats = new ArrayList<SeatState>();
+		for (PlayerState p : playerStates.values())
+			seats.add(new SeatState(p));
+		tsm.seats = seats.toArray(new SeatState[seats.size()]);
+		if (player == null)
+			return tsm;
+		if (isDealing())
+			tsm.holeCards = player.gameHoleCards;
+		if (betting && isWaitingFor(player)) {
+			tsm.futureId = actionFutures.get(player.clientId).getFutureId();
+			tsm.round = tableRound;
+		}
+		return tsm;
 	}
-	
-	public synchronized void removePlayer(int clientId) {
-		Log.v("wePoker - PokerGame", "Removing player "+clientId);
-		PlayerState player = playerStates.get(clientId);
-		if (player != null) {
-			player.connection = null;
-			player.roundActionType = ClientActionType.Fold;
-			gui.removePlayer(player);
+
+	private boolean isDealing() {
+		switch (gameState) {
+		case PREFLOP: case FLOP: case TURN: case RIVER:
+			return true;
+		default:
+			return false;
 		}
-		Future<ClientAction> fut = actionFutures.get(clientId);
-		if (fut != null && ! fut.isResolved()) {
-			fut.resolve(new ClientAction(Message.ClientActionType.Fold, 0, 0));
+	}
+
+	private void playerJoined() {
+		if (gameState == PokerGameState.WAITING_FOR_PLAYERS) {
+			startHand();
 		}
 	}
 
+	public void setNickname(final int clientId, final String nickname) {
+		post(new Runnable() {
+			@Override
+			public void run() {
+				PlayerState player = playerStates.get(clientId);
+				if (player != null) {
+					player.name = nickname;
+					gui.updatePlayerStatus(player);
+					update(new PlayerInfoMessage(player));
+				}
+			}
+		});
+	}
+	
+	public void removePlayer(final int clientId) {
+		post(new Runnable() {
+			@Override
+			public void run() {
+				if (logging) Log.v("wePoker - PokerGame", "Removing player "+clientId);
+				PlayerState player = playerStates.get(clientId);
+				if (player != null) {
+					player.connection = null;
+					player.roundActionType = ClientActionType.Fold;
+					gui.removePlayer(player);
+				}
+				Future<ClientAction> fut = actionFutures.get(clientId);
+				if (fut != null && ! fut.isResolved()) {
+					ClientAction fold = new ClientAction(Message.ClientActionType.Fold, 0, 0);
+					// Through the registry so it stops counting the future; when the connection
+					// is gone, its futures are forgotten already
+					if (!CommLib.futures.resolve(fut, fold))
+						fut.resolve(fold);
+				}
+			}
+		});
+	}
+
 	// Removes players that are disconnected and did not return before the next round started
-	public synchronized void GCPlayers() {
+	public void GCPlayers() {
 		Iterator<PlayerState> playerIt = playerStates.values().iterator();
 		while (playerIt.hasNext()) {
 			PlayerState player = playerIt.next();
@@ -550,16 +1056,61 @@ public class PokerGame extends Thread {
 		}
 	}
 	
-	public synchronized void broadcast(Message m) {
+	// Broadcasts from within an event, all of them reach the players in a single frame
+	private void update(Message m) {
+		updates.add(m);
+	}
+
+	// Sends to one player, after the updates so far to keep the order in which things happened
+	private void send(Connection c, Message m) {
+		flushUpdates();
+		c.sendTCP(m);
+	}
+
+	private void flushUpdates() {
+		if (updates.isEmpty())
+			return;
+		broadcast(new TableUpdateMessage(++seq, updates.toArray(new Message[updates.size()])));
+		updates.clear();
+	}
+
+	// Safe from any thread, the message is serialized once and written to each connection without locking the table.
+	// Spectators get it later, from their own lane.
+	public void broadcast(Message m) {
+		BroadcastSerialization serialization = this.serialization;
+		Object wire = serialization == null ? m : serialization.encode(m);
+		spectators.publish(wire);
+		int sent = 0;
 		for (PlayerState p : playerStates.values()) {
 			Connection c = p.connection;
-			if (c != null)
-				c.sendTCP(m);
+			if (c != null) {
+				c.sendTCP(wire);
+				sent++;
+			}
 		}
+		metrics.messagesSent.addAndGet(sent);
+	}
+
+	public TableMetrics getMetrics() {
+		return metrics;
 	}
 
+	// Seated players, including those that lost their connection during the current hand
+	public int getPlayerCount() {
+		return playerStates.size();
+	}
+
+	// Abandons the current hand, resets all stacks and deals a new hand
 	public void reset() {
-		this.interrupt();
+		post(new Runnable() {
+			@Override
+			public void run() {
+				if (finished || gameState == PokerGameState.STOPPED) return;
+				if (logging) Log.d("wePoker - PokerGame", "resetting state.");
+				resetInternalState();
+				startHand();
+			}
+		});
 	}
 
 	public boolean isFinished() {
@@ -568,6 +1119,12 @@ public class PokerGame extends Thread {
 
 	public void finish() {
 		finished = true;
-		this.interrupt();
+		post(new Runnable() {
+			@Override
+			public void run() {
+				if (logging) Log.d("wePoker - PokerGame", "finished, quitting");
+				resetInternalState();
+			}
+		});
 	}
 }
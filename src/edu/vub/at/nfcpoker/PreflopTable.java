@@ -0,0 +1,93 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package edu.vub.at.nfcpoker;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Preflop equity of the 169 starting hand classes against 1 to 9 random opponents,
+// read from preflop_equity.bin (generated by PreflopTableGenerator in test/).
+//
+// Classes are numbered on a 13x13 grid of HandRank rank indices: pairs on the
+// diagonal, suited hands at (high, low) and offsuit hands at (low, high).
+//
+// File format (big endian):
+//   int magic, int classes, int maxOpponents,
+//   then per class and per number of opponents: char win, char tie, char tieShare
+//   as fractions of 65535.
+
+public class PreflopTable {
+	public static final String RESOURCE = "preflop_equity.bin";
+	public static final int MAGIC = 0x57505046;   // "WPPF"
+	public static final int CLASSES = 169;
+	public static final int MAX_OPPONENTS = 9;
+	public static final int FIELDS = 3;
+	public static final double SCALE = 65535.0;
+
+	// Loaded on first use only.
+	private static class Holder {
+		static final char[] table = load();
+	}
+
+	public static int classIndex(Card c1, Card c2) {
+		int r1 = HandRank.rankIndex(c1.getRank());
+		int r2 = HandRank.rankIndex(c2.getRank());
+		int high = Math.max(r1, r2), low = Math.min(r1, r2);
+		if (c1.getSuit() == c2.getSuit())
+			return high * 13 + low;
+		return low * 13 + high;
+	}
+
+	public static boolean covers(int players) {
+		return players >= 2 && players <= MAX_OPPONENTS + 1;
+	}
+
+	// players includes ourselves, see covers().
+	public static Equity lookup(Card c1, Card c2, int players) {
+		char[] table = Holder.table;
+		int at = (classIndex(c1, c2) * MAX_OPPONENTS + (players - 2)) * FIELDS;
+		double win = table[at] / SCALE;
+		double tie = table[at + 1] / SCALE;
+		double tieShare = table[at + 2] / SCALE;
+		return new Equity(win, tie, Math.max(0, 1 - win - tie), tieShare);
+	}
+
+	private static char[] load() {
+		InputStream in = PreflopTable.class.getResourceAsStream(RESOURCE);
+		if (in == null)
+			throw new IllegalStateException("Missing resource " + RESOURCE);
+		try {
+			DataInputStream data = new DataInputStream(in);
+			if (data.readInt() != MAGIC || data.readInt() != CLASSES || data.readInt() != MAX_OPPONENTS)
+				throw new IllegalStateException("Invalid " + RESOURCE);
+			char[] table = new char[CLASSES * MAX_OPPONENTS * FIELDS];
+			for (int i = 0; i < table.length; i++)
+				table[i] = data.readChar();
+			return table;
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not read " + RESOURCE, e);
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) { }
+		}
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// State machine over the ranks of up to 7 cards, mapped from a file (about 4 MB).
+//
+// Apart from flushes the strength of a hand only depends on how many cards of
+// every rank it holds, and not on the order in which they are added. A state is
+// such a multiset of ranks; adding a card of rank r follows next[state * 13 + r],
+// and value[state] is the strength once a state holds 5 or more cards. Flushes
+// are looked up by the rank mask of the flush suit, as in FiveCardHandEvaluator.
+//
+// File format (little endian ints):
+//   magic, number of states,
+//   then 8192 flush strengths, the transitions (13 per state) and one value per state.
+// open() generates the file the first time.
+
+public class SevenCardHandEvaluator implements HandEvaluator {
+	public static final String FILE_NAME = "hand_ranks_7.dat";
+	public static final int MAGIC = 0x57504837;   // "WPH7"
+	// Size of the file, known up front so it can be checked against a memory budget.
+	public static final long TABLE_SIZE;
+
+	private static final int RANKS = 13;
+	private static final int HEADER = 2;
+	private static final int FLUSHES = 1 << RANKS;
+	private static final int STATES;
+	static {
+		// multisets of 0 to 7 ranks with at most 4 cards of a rank
+		int[] sizes = new int[8];
+		sizes[0] = 1;
+		for (int r = 0; r < RANKS; r++)
+			for (int n = 7; n > 0; n--)
+				for (int c = 1; c <= 4 && c <= n; c++)
+					sizes[n] += sizes[n - c];
+		int states = 0;
+		for (int n = 0; n < sizes.length; n++)
+			states += sizes[n];
+		STATES = states;
+		TABLE_SIZE = 4L * (HEADER + FLUSHES + STATES * (RANKS + 1));
+	}
+
+	private final IntBuffer table;
+	private final int nextOffset, valueOffset;
+
+	private SevenCardHandEvaluator(IntBuffer table) {
+		this.table = table;
+		this.nextOffset = HEADER + FLUSHES;
+		this.valueOffset = nextOffset + STATES * RANKS;
+	}
+
+	// Maps file, generating it first if it does not exist yet.
+	public static SevenCardHandEvaluator open(File file) throws IOException {
+		if (!file.exists())
+			generate(file);
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.length() != TABLE_SIZE)
+				throw new IOException("Invalid hand rank table " + file);
+			FileChannel channel = raf.getChannel();
+			IntBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, 0, TABLE_SIZE)
+					.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			if (table.get(0) != MAGIC || table.get(1) != STATES)
+				throw new IOException("Invalid hand rank table " + file);
+			return new SevenCardHandEvaluator(table);
+		} finally {
+			// The mapping stays valid after closing the file.
+			raf.close();
+		}
+	}
+
+	// Writes the table to a temporary file next to file and renames it, so a
+	// half-written table is never picked up.
+	public static void generate(File file) throws IOException {
+		// Number the states breadth first, the empty hand is state 0.
+		Map<Long, Integer> ids = new HashMap<Long, Integer>();
+		List<Long> states = new ArrayList<Long>(STATES);   // counts per rank, 3 bits each
+		ids.put(0L, 0);
+		states.add(0L);
+		int[] next = new int[STATES * RANKS];
+		int[] values = new int[STATES];
+		for (int s = 0; s < states.size(); s++) {
+			long counts = states.get(s);
+			int size = 0;
+			for (int r = 0; r < RANKS; r++)
+				size += count(counts, r);
+			if (size >= 5)
+				values[s] = strength(counts);
+			if (size == 7)
+				continue;
+			for (int r = 0; r < RANKS; r++) {
+				if (count(counts, r) == 4)
+					continue;
+				Long child = counts + (1L << (3 * r));
+				Integer id = ids.get(child);
+				if (id == null) {
+					id = states.size();
+					ids.put(child, id);
+					states.add(child);
+				}
+				next[s * RANKS + r] = id;
+			}
+		}
+		if (states.size() != STATES)
+			throw new IllegalStateException("Expected " + STATES + " states, found " + states.size());
+
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+		try {
+			writeInt(out, MAGIC);
+			writeInt(out, STATES);
+			for (int mask = 0; mask < FLUSHES; mask++)
+				writeInt(out, Integer.bitCount(mask) >= 5 ? HandRank.evaluate(mask, 0, 0, 0) : 0);
+			for (int i = 0; i < next.length; i++)
+				writeInt(out, next[i]);
+			for (int i = 0; i < values.length; i++)
+				writeInt(out, values[i]);
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(file)) {
+			tmp.delete();
+			throw new IOException("Could not write " + file);
+		}
+	}
+
+	private static int count(long counts, int rank) {
+		return (int) (counts >>> (3 * rank)) & 7;
+	}
+
+	// Strength of a hand with the given rank counts, dealt without a flush
+	// (the i-th card goes to suit i % 4).
+	private static int strength(long counts) {
+		int[] suits = new int[4];
+		int card = 0;
+		for (int r = 0; r < RANKS; r++)
+			for (int c = count(counts, r); c > 0; c--)
+				suits[card++ % 4] |= 1 << r;
+		return HandRank.evaluate(suits[0], suits[1], suits[2], suits[3]);
+	}
+
+	private static void writeInt(DataOutputStream out, int v) throws IOException {
+		out.writeInt(Integer.reverseBytes(v));
+	}
+
+	@Override
+	public int evaluate(long cards) {
+		int m0 = CardSet.suitMask(cards, 0), m1 = CardSet.suitMask(cards, 1);
+		int m2 = CardSet.suitMask(cards, 2), m3 = CardSet.suitMask(cards, 3);
+		if (Integer.bitCount(m0) >= 5) return table.get(HEADER + m0);
+		if (Integer.bitCount(m1) >= 5) return table.get(HEADER + m1);
+		if (Integer.bitCount(m2) >= 5) return table.get(HEADER + m2);
+		if (Integer.bitCount(m3) >= 5) return table.get(HEADER + m3);
+
+		return table.get(valueOffset + walk(0, cards));
+	}
+
+	// The state reached from state by adding the ranks of cards
+	private int walk(int state, long cards) {
+		for (long rest = cards; rest != 0; rest &= rest - 1) {
+			int rank = Long.numberOfTrailingZeros(rest) % CardSet.SUIT_BITS;
+			state = table.get(nextOffset + state * RANKS + rank);
+		}
+		return state;
+	}
+
+	// Keeps the suit masks of the board and the state its ranks lead to, the order
+	// of the cards does not matter, so every hand only walks its own two cards from there
+	@Override
+	public PreparedBoard prepareBoard(long board) {
+		final int b0 = CardSet.suitMask(board, 0), b1 = CardSet.suitMask(board, 1);
+		final int b2 = CardSet.suitMask(board, 2), b3 = CardSet.suitMask(board, 3);
+		final int boardState = walk(0, board);
+		return new PreparedBoard() {
+			@Override
+			public int evaluate(long h) {
+				int m0 = b0 | CardSet.suitMask(h, 0), m1 = b1 | CardSet.suitMask(h, 1);
+				int m2 = b2 | CardSet.suitMask(h, 2), m3 = b3 | CardSet.suitMask(h, 3);
+				if (Integer.bitCount(m0) >= 5) return table.get(HEADER + m0);
+				if (Integer.bitCount(m1) >= 5) return table.get(HEADER + m1);
+				if (Integer.bitCount(m2) >= 5) return table.get(HEADER + m2);
+				if (Integer.bitCount(m3) >= 5) return table.get(HEADER + m3);
+				return table.get(valueOffset + walk(boardState, h));
+			}
+		};
+	}
+
+	@Override
+	public long getTableSize() {
+		return TABLE_SIZE;
+	}
+
+	@Override
+	public String toString() {
+		return "7-card table evaluator";
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package edu.vub.at.nfcpoker;
+
+// Ranks the hole cards of all remaining players against one shared board.
+// The board is prepared once (see HandEvaluator.prepareBoard); every player only adds two cards to it.
+public class Showdown {
+	public final int[] strengths;     // packed HandRank strength per player
+	public final int bestStrength;
+	public final int[] winners;       // indices of the players with bestStrength, ascending
+
+	private Showdown(int[] strengths, int bestStrength, int[] winners) {
+		this.strengths = strengths;
+		this.bestStrength = bestStrength;
+		this.winners = winners;
+	}
+
+	// holeCards[i] are the CardSet bits of player i's hole cards.
+	public static Showdown evaluate(CardSet board, long[] holeCards) {
+		return evaluate(HandEvaluators.getDefault(), board, holeCards);
+	}
+
+	public static Showdown evaluate(HandEvaluator evaluator, CardSet board, long[] holeCards) {
+		HandEvaluator.PreparedBoard b = evaluator.prepareBoard(board.getBits());
+
+		int n = holeCards.length;
+		int[] strengths = new int[n];
+		int best = 0, winnerCount = 0;
+		for (int i = 0; i < n; i++) {
+			int strength = b.evaluate(holeCards[i]);
+			strengths[i] = strength;
+			if (strength > best) {
+				best = strength;
+				winnerCount = 1;
+			} else if (strength == best) {
+				winnerCount++;
+			}
+		}
+
+		int[] winners = new int[winnerCount];
+		for (int i = 0, w = 0; i < n; i++)
+			if (strengths[i] == best)
+				winners[w++] = i;
+		return new Showdown(strengths, best, winners);
+	}
+
+	public boolean isWinner(int player) {
+		return strengths[player] == bestStrength;
+	}
+}
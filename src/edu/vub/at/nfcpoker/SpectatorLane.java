@@ -0,0 +1,168 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.esotericsoftware.kryonet.Connection;
+
+// Sends what a table broadcasts to its spectators, on a low priority thread shared by
+// all tables, so that players never wait for them.
+// A spectator whose connection does not keep up skips updates until its write buffer
+// has drained, and then gets the table state instead of everything it missed.
+class SpectatorLane {
+
+	// Bytes waiting to be written to a spectator before it skips updates
+	private static final int MAX_BACKLOG = 4096;
+	// Messages waiting for the lane before the oldest is dropped for everyone
+	private static final int MAX_QUEUED = 64;
+
+	private static Executor sharedExecutor;
+
+	private static final class Spectator {
+		final Connection connection;
+		volatile boolean behind;
+		volatile boolean resyncing;
+
+		Spectator(Connection connection) {
+			this.connection = connection;
+		}
+	}
+
+	private final PokerGame table;
+	private final TableMetrics metrics;
+	private final Executor executor;
+	private final ConcurrentMap<Connection, Spectator> spectators = new ConcurrentHashMap<Connection, Spectator>();
+	private final Queue<Object> queue = new ConcurrentLinkedQueue<Object>();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicBoolean draining = new AtomicBoolean();
+	private final Runnable drainer = new Runnable() {
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+
+	SpectatorLane(PokerGame table, TableMetrics metrics) {
+		this.table = table;
+		this.metrics = metrics;
+		this.executor = getSharedExecutor();
+	}
+
+	private static synchronized Executor getSharedExecutor() {
+		if (sharedExecutor == null) {
+			sharedExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "wePoker - Spectators");
+					t.setDaemon(true);
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+			});
+		}
+		return sharedExecutor;
+	}
+
+	// The caller sent c the table state, updates published from now on reach it as well
+	void add(Connection c) {
+		spectators.put(c, new Spectator(c));
+	}
+
+	void remove(Connection c) {
+		spectators.remove(c);
+	}
+
+	boolean contains(Connection c) {
+		return spectators.containsKey(c);
+	}
+
+	int size() {
+		return spectators.size();
+	}
+
+	// Called by the table once it sent c the table state
+	void caughtUp(Connection c) {
+		Spectator s = spectators.get(c);
+		if (s != null) {
+			s.behind = false;
+			s.resyncing = false;
+		}
+	}
+
+	// Called when the write buffer of c drained, see GameServer
+	void idle(Connection c) {
+		Spectator s = spectators.get(c);
+		if (s != null && s.behind)
+			resync(s);
+	}
+
+	// Queues a message (serialized or not) for all spectators, never blocks
+	void publish(Object wire) {
+		if (spectators.isEmpty())
+			return;
+		queue.add(wire);
+		if (queued.incrementAndGet() > MAX_QUEUED && queue.poll() != null) {
+			queued.decrementAndGet();
+			for (Spectator s : spectators.values())
+				s.behind = true;
+		}
+		if (draining.compareAndSet(false, true)) {
+			executor.execute(drainer);
+		}
+	}
+
+	private void drain() {
+		Object wire;
+		while ((wire = queue.poll()) != null) {
+			queued.decrementAndGet();
+			for (Spectator s : spectators.values()) {
+				Connection c = s.connection;
+				if (!s.behind && c.getTcpWriteBufferSize() > MAX_BACKLOG)
+					s.behind = true;
+				if (s.behind) {
+					metrics.spectatorMessagesSkipped.incrementAndGet();
+					resync(s);
+					continue;
+				}
+				c.sendTCP(wire);
+				metrics.spectatorMessagesSent.incrementAndGet();
+			}
+		}
+		draining.set(false);
+		if (!queue.isEmpty() && draining.compareAndSet(false, true)) {
+			executor.execute(drainer);
+		}
+	}
+
+	private void resync(Spectator s) {
+		if (!s.resyncing && s.connection.isIdle()) {
+			s.resyncing = true;
+			table.resyncSpectator(s.connection);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker;
+
+// Hole cards and board that only differ by a renaming of the suits have the same
+// equity (e.g. the ace and king of hearts on a flop of spades, or of clubs on
+// diamonds). key() gives such configurations one and the same number.
+//
+// Suits are renamed in decreasing order of (hole cards in the suit, board cards
+// in the suit); suits that tie hold exactly the same ranks, so their order does
+// not matter. The renamed cards are then packed as
+//   hole count (3 bits), board count (3 bits), then 6 bits per card (CardSet bit
+//   index), hole cards first, each part in increasing order.
+
+public final class SuitIsomorphism {
+	public static final int MAX_CARDS = 7;
+	public static final int KEY_BITS = 6 + MAX_CARDS * 6;
+
+	private SuitIsomorphism() {}
+
+	public static long key(CardSet holeCards, CardSet board) {
+		return key(holeCards.getBits(), board.getBits());
+	}
+
+	public static long key(long hole, long board) {
+		int holeCount = Long.bitCount(hole), boardCount = Long.bitCount(board);
+		if (holeCount + boardCount > MAX_CARDS)
+			throw new IllegalArgumentException("Too many cards: " + holeCount + " + " + boardCount);
+
+		// Sort the suits by signature, largest first (insertion sort of 4).
+		long[] signatures = new long[4];
+		int[] order = new int[4];
+		for (int s = 0; s < 4; s++) {
+			long signature = ((long) CardSet.suitMask(hole, s) << CardSet.SUIT_BITS) | CardSet.suitMask(board, s);
+			int i = s;
+			for (; i > 0 && signatures[i - 1] < signature; i--) {
+				signatures[i] = signatures[i - 1];
+				order[i] = order[i - 1];
+			}
+			signatures[i] = signature;
+			order[i] = s;
+		}
+
+		long canonicalHole = 0, canonicalBoard = 0;
+		for (int i = 0; i < 4; i++) {
+			canonicalHole |= (long) CardSet.suitMask(hole, order[i]) << (i * CardSet.SUIT_BITS);
+			canonicalBoard |= (long) CardSet.suitMask(board, order[i]) << (i * CardSet.SUIT_BITS);
+		}
+
+		long key = ((long) holeCount << 3) | boardCount;
+		key = pack(key, canonicalHole);
+		return pack(key, canonicalBoard);
+	}
+
+	private static long pack(long key, long cards) {
+		for (long rest = cards; rest != 0; rest &= rest - 1)
+			key = (key << 6) | Long.numberOfTrailingZeros(rest);
+		return key;
+	}
+}
@@ -0,0 +1,45 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker;
+
+// Wall clock time. All tables share one timer thread.
+class SystemClock implements Clock {
+	// 100ms resolution is plenty for pauses between hands and action deadlines
+	private static final long TICK_MILLIS = 100;
+	private static final int TICKS_PER_WHEEL = 512;
+
+	private HashedWheelTimer timer;
+
+	@Override
+	public long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	@Override
+	public Timeout schedule(Runnable task, long delayMillis) {
+		return getTimer().schedule(task, delayMillis);
+	}
+
+	synchronized HashedWheelTimer getTimer() {
+		if (timer == null) {
+			timer = new HashedWheelTimer("wePoker - Timer", TICK_MILLIS, TICKS_PER_WHEEL);
+		}
+		return timer;
+	}
+}
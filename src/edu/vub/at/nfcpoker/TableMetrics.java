@@ -0,0 +1,70 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Counters of one PokerGame, to see what a table costs a server.
+// Only the game's own events write them, except messagesSent which
+// is also counted when the server broadcasts on the table's behalf,
+// and the spectator counters which the SpectatorLane keeps.
+public class TableMetrics {
+	volatile long hands;
+	volatile long actions;
+	volatile long events;
+	volatile long busyNanos;        // time spent handling events
+	final AtomicLong messagesSent = new AtomicLong();
+	final AtomicLong spectatorMessagesSent = new AtomicLong();
+	final AtomicLong spectatorMessagesSkipped = new AtomicLong();   // not sent to spectators that fell behind
+
+	public long getHands() {
+		return hands;
+	}
+
+	public long getActions() {
+		return actions;
+	}
+
+	public long getEvents() {
+		return events;
+	}
+
+	public long getBusyNanos() {
+		return busyNanos;
+	}
+
+	public long getMessagesSent() {
+		return messagesSent.get();
+	}
+
+	public long getSpectatorMessagesSent() {
+		return spectatorMessagesSent.get();
+	}
+
+	public long getSpectatorMessagesSkipped() {
+		return spectatorMessagesSkipped.get();
+	}
+
+	@Override
+	public String toString() {
+		return hands + " hands, " + actions + " actions, " + events + " events ("
+				+ busyNanos / 1000000 + " ms busy), " + messagesSent.get() + " messages sent, "
+				+ spectatorMessagesSent.get() + " to spectators (" + spectatorMessagesSkipped.get() + " skipped)";
+	}
+}
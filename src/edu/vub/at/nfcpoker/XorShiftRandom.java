@@ -0,0 +1,72 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker;
+
+import java.util.Random;
+
+// xorshift64* generator: a drop-in java.util.Random that is a lot cheaper per number.
+// Not thread safe, give every thread its own instance.
+// Good enough for dealing and simulations, not for anything cryptographic.
+
+public class XorShiftRandom extends Random {
+	private static final long serialVersionUID = 1L;
+
+	private long state;
+
+	public XorShiftRandom() {
+		this(System.nanoTime() ^ Thread.currentThread().getId() * 0x9E3779B97F4A7C15L);
+	}
+
+	public XorShiftRandom(long seed) {
+		super(seed);
+	}
+
+	// Also called from the Random constructor.
+	@Override
+	public void setSeed(long seed) {
+		super.setSeed(seed);
+		// splitmix64 finalizer, so that nearby seeds give unrelated sequences
+		long z = seed + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z ^= z >>> 31;
+		state = z == 0 ? 1 : z;
+	}
+
+	@Override
+	public long nextLong() {
+		state ^= state >>> 12;
+		state ^= state << 25;
+		state ^= state >>> 27;
+		return state * 2685821657736338717L;
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	// Multiply-shift instead of modulo and rejection, the bias is below 2^-32.
+	@Override
+	public int nextInt(int bound) {
+		if (bound <= 0)
+			throw new IllegalArgumentException("bound must be positive");
+		return (int) (((nextLong() >>> 32) * bound) >>> 32);
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker.comm;
+
+import java.nio.ByteBuffer;
+
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.KryoSerialization;
+
+// Kryo serialization for the server that can serialize a message once for many connections.
+// encode() turns a message into a SerializedMessage holding the bytes Kryo would write for it;
+// sending that to a connection only copies those bytes into its write buffer. The receiving
+// end reads an ordinary message.
+public class BroadcastSerialization extends KryoSerialization {
+
+	public static final class SerializedMessage {
+		public final Message message;
+		final byte[] bytes;
+
+		SerializedMessage(Message message, byte[] bytes) {
+			this.message = message;
+			this.bytes = bytes;
+		}
+
+		public int size() {
+			return bytes.length;
+		}
+
+		@Override
+		public String toString() {
+			return message.toString();
+		}
+	}
+
+	// Messages that would need more than this are sent the ordinary way
+	private static final int MAX_ENCODED_SIZE = 8192;
+
+	private final Output output = new Output(256, MAX_ENCODED_SIZE);
+
+	// Serializes m, to be sent to any number of connections of this serialization.
+	// Returns m itself when it cannot be serialized ahead, sendTCP then reports the problem.
+	public Object encode(Message m) {
+		// Kryo is not thread safe, KryoSerialization locks this as well
+		synchronized (this) {
+			try {
+				output.clear();
+				getKryo().writeClassAndObject(output, m);
+				return new SerializedMessage(m, output.toBytes());
+			} catch (KryoException e) {
+				return m;
+			}
+		}
+	}
+
+	@Override
+	public void write(Connection connection, ByteBuffer buffer, Object object) {
+		if (object instanceof SerializedMessage) {
+			byte[] bytes = ((SerializedMessage) object).bytes;
+			if (buffer.remaining() < bytes.length)
+				throw new KryoException("Buffer overflow.");
+			buffer.put(bytes);
+			return;
+		}
+		super.write(connection, buffer, object);
+	}
+}
@@ -17,27 +17,32 @@
  * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
  */
 
-package edu.vub.at.commlib;
-
-import java.util.UUID;
+package edu.vub.at.nfcpoker.comm;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 
-public class UUIDSerializer extends Serializer<UUID> {
+import edu.vub.at.nfcpoker.Card;
+
+// Cards are interned (see Card.get), so only their index goes over the wire.
+// A card takes one byte, null included: 0 is null, a card is its index + 1.
+public class CardSerializer extends Serializer<Card> {
+
+	public CardSerializer() {
+		setImmutable(true);
+		setAcceptsNull(true);
+	}
 
 	@Override
-	public void write(Kryo kryo, Output output, UUID u) {
-		output.writeLong(u.getMostSignificantBits());
-		output.writeLong(u.getLeastSignificantBits());
+	public void write(Kryo kryo, Output output, Card c) {
+		output.writeByte(c == null ? 0 : c.getIndex() + 1);
 	}
 
 	@Override
-	public UUID read(Kryo kryo, Input input, Class<UUID> k) {
-		long msb = input.readLong();
-		long lsb = input.readLong();
-		return new UUID(msb, lsb);
+	public Card read(Kryo kryo, Input input, Class<Card> k) {
+		int b = input.readByte();
+		return b == 0 ? null : Card.get(b - 1);
 	}
-}
\ No newline at end of file
+}
@@ -20,43 +20,96 @@
 package edu.vub.at.nfcpoker.comm;
 
 import java.io.IOException;
-import java.util.UUID;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 
 import android.util.Log;
 
-import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryonet.Connection;
 import com.esotericsoftware.kryonet.Listener;
 import com.esotericsoftware.kryonet.Server;
 
 import edu.vub.at.commlib.CommLib;
 import edu.vub.at.commlib.CommLibConnectionInfo;
-import edu.vub.at.commlib.UUIDSerializer;
 import edu.vub.at.nfcpoker.PokerGame;
 import edu.vub.at.nfcpoker.comm.Message.CheatMessage;
 import edu.vub.at.nfcpoker.comm.Message.SetIDMessage;
 import edu.vub.at.nfcpoker.comm.Message.FutureMessage;
 import edu.vub.at.nfcpoker.comm.Message.SetClientParameterMessage;
 import edu.vub.at.nfcpoker.comm.Message.SetNicknameMessage;
+import edu.vub.at.nfcpoker.comm.Message.SpectateMessage;
+import edu.vub.at.nfcpoker.comm.Message.TableStateRequestMessage;
+import edu.vub.at.nfcpoker.comm.Message.ToastMessage;
 import edu.vub.at.nfcpoker.ui.ServerViewInterface;
 
+// Hosts any number of tables on one port.
+// Clients pick their table when they register (SetClientParameterMessage.tableId), tables are
+// opened on first use. Client IDs are unique over the whole server, every connection sits at
+// exactly one table and its messages are routed there. The table shown on the server's own
+// screen is DEFAULT_TABLE.
 public class GameServer extends PokerServer  {
 
+	public static final int DEFAULT_TABLE = 0;
+	public static final int MAX_TABLES = 256;
+
+	// KryoNet's defaults
+	private static final int WRITE_BUFFER_SIZE = 16384;
+	private static final int OBJECT_BUFFER_SIZE = 2048;
+
 	protected Server currentServer;
 	private int nextClientID = 0;
 	
-	private PokerGame gameLoop;
+	private ServerViewInterface gui;
+	private final BroadcastSerialization serialization = new BroadcastSerialization();
+	private ConcurrentMap<Integer, PokerGame> tables = new ConcurrentHashMap<Integer, PokerGame>();
+	private volatile boolean started;
+	private volatile boolean stopped;
 	private boolean isDedicated;
 	private String serverAddress;
 	private String broadcastAddress;
 	private ConcurrentSkipListMap<Integer, Connection> connections = new ConcurrentSkipListMap<Integer, Connection>();
+	// Changed together with connections, under the lock of sessions
+	private ConcurrentMap<Connection, Session> sessions = new ConcurrentHashMap<Connection, Session>();
+
+	// What the server knows about a connection. Only the network thread changes it.
+	private static final class Session {
+		volatile int clientId;      // -1 once a newer connection took the ID over
+		volatile PokerGame table;   // playing or watching, null until the client chose
+
+		Session(int clientId) {
+			this.clientId = clientId;
+		}
+	}
 	
 	public GameServer(ServerViewInterface gui, boolean isDedicated, String serverAddress, String broadcastAddress) {
-		this.gameLoop = new PokerGame(gui);
+		this.gui = gui;
 		this.isDedicated = isDedicated;
     	this.serverAddress = serverAddress;
     	this.broadcastAddress = broadcastAddress;
+		// Set up before any table broadcasts with it
+		Protocol.register(serialization.getKryo());
+		getTable(DEFAULT_TABLE);
+	}
+
+	// Returns the table, opening it when needed. Null when the table ID is out of range.
+	public PokerGame getTable(int tableId) {
+		if (tableId < 0 || tableId >= MAX_TABLES)
+			return null;
+		PokerGame table = tables.get(tableId);
+		if (table == null) {
+			PokerGame newTable = new PokerGame(tableId == DEFAULT_TABLE ? gui : ServerViewInterface.ignore);
+			newTable.setSerialization(serialization);
+			table = tables.putIfAbsent(tableId, newTable);
+			if (table == null) {
+				table = newTable;
+				Log.d("wePoker - Server", "Opened table " + tableId);
+				if (started)
+					table.start();
+			}
+		}
+		return table;
 	}
 	
 	Thread exporterThread = new Thread() {	
@@ -89,11 +142,8 @@ public class GameServer extends PokerServer  {
 		public void run() {
 			try {
 				Log.d("wePoker - Server", "Starting server thread");
-				Server s = new Server();
+				Server s = new Server(WRITE_BUFFER_SIZE, OBJECT_BUFFER_SIZE, serialization);
 				currentServer = s;
-				Kryo k = s.getKryo();
-				k.setRegistrationRequired(false);
-				k.register(UUID.class, new UUIDSerializer());
 				s.bind(CommLib.SERVER_PORT);
 				s.start();
 				s.addListener(new Listener() {
@@ -109,33 +159,61 @@ public class GameServer extends PokerServer  {
 						super.received(c, msg);
 						if (msg instanceof FutureMessage) {
 							FutureMessage fm = (FutureMessage) msg;
-							Log.d("wePoker - Server", "Resolving future " + fm.futureId + "(" + CommLib.futures.get(fm.futureId) + ") with value " + fm.futureValue);
-							CommLib.resolveFuture(fm.futureId, fm.futureValue);
+							Log.d("wePoker - Server", "Resolving future " + fm.futureId + "(" + CommLib.futures.get(c, fm.futureId) + ") with value " + fm.futureValue);
+							CommLib.resolveFuture(c, fm.futureId, fm.futureValue);
 						}
 						if (msg instanceof SetClientParameterMessage) {
 							SetClientParameterMessage cm = (SetClientParameterMessage) msg;
 							Log.d("wePoker - Server", "Got SetIDReplyMessage: "+cm.toString());
+							PokerGame table = getTable(cm.tableId);
+							if (table == null) {
+								c.sendTCP(new ToastMessage("There is no table " + cm.tableId));
+								return;
+							}
 							if (cm.reconnect) {
-								reregisterClient(c, cm.clientId, cm.nickname, cm.avatar, cm.money);
+								reregisterClient(c, table, cm.clientId, cm.nickname, cm.avatar, cm.money);
 							} else {
-								registerClient(c, cm.nickname, cm.avatar, cm.money);
+								registerClient(c, table, cm.nickname, cm.avatar, cm.money);
 							}
-							gameLoop.broadcast(cm);
+							table.broadcast(cm);
 						}
 						if (msg instanceof SetNicknameMessage) {
 							SetNicknameMessage snm = (SetNicknameMessage) msg;
 							Log.d("wePoker - Server", "Got SetNicknameMessage: "+snm.toString());
-							setNickname(c, snm.nickname);
-							gameLoop.broadcast(snm);
+							PokerGame table = setNickname(c, snm.nickname);
+							if (table != null)
+								table.broadcast(snm);
+						}
+						if (msg instanceof SpectateMessage) {
+							SpectateMessage sm = (SpectateMessage) msg;
+							Log.d("wePoker - Server", "Got SpectateMessage: "+sm.toString());
+							PokerGame table = getTable(sm.tableId);
+							if (table == null) {
+								c.sendTCP(new ToastMessage("There is no table " + sm.tableId));
+								return;
+							}
+							spectate(c, table);
+						}
+						if (msg instanceof TableStateRequestMessage) {
+							Log.d("wePoker - Server", "Got TableStateRequestMessage: "+msg.toString());
+							resync(c);
 						}
 						if (msg instanceof CheatMessage) {
 							CheatMessage cm = (CheatMessage) msg;
 							Log.d("wePoker - Server", "Got CheatMessage: "+cm.toString());
-							cheatMoney(c, cm.amount);
-							gameLoop.broadcast(cm);
+							PokerGame table = cheatMoney(c, cm.amount);
+							if (table != null)
+								table.broadcast(cm);
 						}
 					}
 
+					@Override
+					public void idle(Connection c) {
+						Session session = sessions.get(c);
+						if (session != null && session.table != null)
+							session.table.idle(c);
+					}
+
 					@Override
 					public void disconnected(Connection c) {
 						super.disconnected(c);
@@ -153,78 +231,155 @@ public class GameServer extends PokerServer  {
 	public void start() {		
 		Log.d("wePoker - Server", "Starting server and exporter threads...");
 		serverThread.start();
-		gameLoop.start();
+		started = true;
+		for (PokerGame table : tables.values())
+			table.start();
 		if (broadcastAddress != null)
 			exporterThread.start();
 	}
 	
 	public void stop() {
-		if (gameLoop.isFinished())
+		if (stopped)
 			return;
+		stopped = true;
 		currentServer.stop();
-		gameLoop.finish();
+		for (PokerGame table : tables.values())
+			table.finish();
 		if (exporterThread.isAlive())
 			exporterThread.interrupt();
 	}
 
 	public void addClient(Connection c) {
 		Log.d("wePoker - Server", "Adding client " + c.getRemoteAddressTCP());
-		connections.put(nextClientID, c);
-		c.sendTCP(new SetIDMessage(nextClientID));
-		nextClientID++;
+		int clientId = nextClientID++;
+		synchronized (sessions) {
+			connections.put(clientId, c);
+			sessions.put(c, new Session(clientId));
+		}
+		c.sendTCP(new SetIDMessage(clientId));
 	}
 	
-	public void registerClient(Connection c, String nickname, int avatar, int money) {
-		for (Integer i : connections.keySet()) {
-			if (connections.get(i) == c) {
-				gameLoop.addPlayer(c, i, nickname, avatar, money);
-				return;
-			}
-		}
+	public void registerClient(Connection c, PokerGame table, String nickname, int avatar, int money) {
+		Session session = sessions.get(c);
+		if (session == null || session.clientId < 0)
+			return;
+		seat(c, session, table).addPlayer(c, session.clientId, nickname, avatar, money);
 	}
 	
-	public void reregisterClient(Connection c, int clientId, String nickname, int avatar, int money) {
-		for (Integer i : connections.keySet()) {
-			if (connections.get(i) == c) {
-				connections.put(clientId, c);
-				connections.remove(i);
-				gameLoop.reAddPlayer(c, clientId, nickname, avatar, money);
-				return;
+	// c belongs to a client that was connected before as clientId and takes that ID back
+	public void reregisterClient(Connection c, PokerGame table, int clientId, String nickname, int avatar, int money) {
+		Session session = sessions.get(c);
+		if (session == null || session.clientId < 0)
+			return;
+		synchronized (sessions) {
+			if (session.clientId != clientId) {
+				Connection old = connections.put(clientId, c);
+				if (old != null && old != c) {
+					// The old connection is not closed yet, it no longer speaks for the player
+					Session oldSession = sessions.get(old);
+					if (oldSession != null)
+						oldSession.clientId = -1;
+				}
+				connections.remove(session.clientId, c);
+				session.clientId = clientId;
 			}
 		}
+		seat(c, session, table).reAddPlayer(c, clientId, nickname, avatar, money);
+	}
+
+	// Lets c watch table, it is not dealt in
+	public void spectate(Connection c, PokerGame table) {
+		Session session = sessions.get(c);
+		if (session == null)
+			return;
+		seat(c, session, table).addSpectator(c);
+	}
+
+	// Routes c to table; a client that registers again at another table leaves its old one.
+	private PokerGame seat(Connection c, Session session, PokerGame table) {
+		PokerGame previous = session.table;
+		session.table = table;
+		if (previous != null)
+			previous.removeSpectator(c);
+		if (previous != null && previous != table && session.clientId >= 0)
+			previous.removePlayer(session.clientId);
+		return table;
 	}
 	
-	public void setNickname(Connection c, String nickname) {
-		for (Integer i : connections.keySet()) {
-			if (connections.get(i) == c) {
-				gameLoop.setNickname(i, nickname);
-				return;
-			}
-		}
+	public PokerGame setNickname(Connection c, String nickname) {
+		Session session = sessions.get(c);
+		if (session == null || session.table == null || session.clientId < 0)
+			return null;
+		session.table.setNickname(session.clientId, nickname);
+		return session.table;
 	}
 	
-	private void cheatMoney(Connection c, int amount) {
-		for (Integer i : connections.keySet()) {
-			if (connections.get(i) == c) {
-				gameLoop.cheatMoney(i, amount);
-				return;
-			}
+	private PokerGame cheatMoney(Connection c, int amount) {
+		Session session = sessions.get(c);
+		if (session == null || session.table == null || session.clientId < 0)
+			return null;
+		session.table.cheatMoney(session.clientId, amount);
+		return session.table;
+	}
+	
+	private void resync(Connection c) {
+		Session session = sessions.get(c);
+		if (session == null || session.table == null)
+			return;
+		PokerGame table = session.table;
+		if (table.isSpectator(c)) {
+			table.resyncSpectator(c);
+			return;
 		}
+		if (session.clientId >= 0)
+			table.resync(session.clientId);
 	}
 	
 	public void removeClient(Connection c) {
 		//Log.d("wePoker - Server", "Client removed: " + c);
-		for (Integer i : connections.keySet()) {
-			if (connections.get(i) == c) {
-				gameLoop.removePlayer(i);
-				connections.remove(i);
+		CommLib.futures.remove(c);
+		Session session;
+		synchronized (sessions) {
+			session = sessions.remove(c);
+			if (session == null)
 				return;
-			}
+			if (session.clientId >= 0)
+				connections.remove(session.clientId, c);
+		}
+		PokerGame table = session.table;
+		if (table != null) {
+			table.removeSpectator(c);
+			if (session.clientId >= 0)
+				table.removePlayer(session.clientId);
 		}
 	}
 	
+	// Resets every table
 	public void reset() {
-		gameLoop.reset();
+		for (PokerGame table : tables.values())
+			table.reset();
 	}
-}
 
+	public Map<Integer, PokerGame> getTables() {
+		return tables;
+	}
+
+	// One line per table with players and what it cost so far, for monitoring dedicated servers
+	public String getMetrics() {
+		Runtime rt = Runtime.getRuntime();
+		StringBuilder sb = new StringBuilder();
+		sb.append(tables.size()).append(" tables, ")
+		  .append(connections.size()).append(" connections, ")
+		  .append(CommLib.futures).append(", ")
+		  .append((rt.totalMemory() - rt.freeMemory()) >> 20).append(" MB heap in use");
+		for (Map.Entry<Integer, PokerGame> e : tables.entrySet()) {
+			PokerGame table = e.getValue();
+			sb.append("\n  table ").append(e.getKey()).append(": ")
+			  .append(table.getPlayerCount()).append(" players, ")
+			  .append(table.getSpectatorCount()).append(" spectators, ")
+			  .append(table.gameState).append(", ")
+			  .append(table.getMetrics());
+		}
+		return sb.toString();
+	}
+}
@@ -19,10 +19,10 @@
 
 package edu.vub.at.nfcpoker.comm;
 
+import java.util.Arrays;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
 
 import com.esotericsoftware.minlog.Log;
 
@@ -41,6 +41,7 @@ public interface Message {
 		public ClientActionType actionType;
 		public int roundMoney;
 		public int extraMoney;
+		public boolean timedOut;          // chosen by the server, the player did not act in time
 		public transient boolean handled; // 
 
 		public ClientAction(ClientActionType actionType) {
@@ -140,10 +141,10 @@ public interface Message {
 	}
 
 	public static class FutureMessage extends TimestampedMessage {
-		public UUID futureId;
+		public int futureId;
 		public Object futureValue;
 
-		public FutureMessage(UUID futureId_, Object futureValue_) {
+		public FutureMessage(int futureId_, Object futureValue_) {
 			futureId = futureId_;
 			futureValue = futureValue_;
 		}
@@ -158,7 +159,7 @@ public interface Message {
 	}
 
 	public static class RequestClientActionFutureMessage extends TimestampedMessage {
-		public UUID futureId;
+		public int futureId;   // numbered per connection, see FutureRegistry
 		public int round;
 
 		public RequestClientActionFutureMessage(Future<?> f, int round_) {
@@ -199,35 +200,65 @@ public interface Message {
 	}
 
 
+	// Who won the hand and what they got. Winners are sent by client ID, clients know
+	// the names from the seats of the table (see TableStateMessage, PlayerInfoMessage).
 	public class RoundWinnersDeclarationMessage extends TimestampedMessage implements Message {
 
-		public List<PlayerState> bestPlayers;
-		public List<String> bestPlayerNames;
-		public boolean showCards;
-		public Hand bestHand;
-		public int chips;
+		public int[] winnerIds;
+		public int[] payouts;      // chips won, per winner
+		public boolean showCards;  // false when everybody else folded
+		public int[] hands;        // packed strength per winner (see HandRank), only if showCards
+		public Card[] shownCards;  // two hole cards per winner, only if showCards
 
-		public RoundWinnersDeclarationMessage(List<PlayerState> bestPlayers, List<String> bestNames, boolean showCards, Hand bestHand, int amountOfChips) {
-			this.bestPlayers = bestPlayers;
-			this.bestPlayerNames = bestNames;
+		public RoundWinnersDeclarationMessage(List<PlayerState> winners, int share, boolean showCards, int bestHand) {
+			int n = winners.size();
+			this.winnerIds = new int[n];
+			this.payouts = new int[n];
 			this.showCards = showCards;
-			this.bestHand = bestHand;
-			this.chips = amountOfChips;
+			if (showCards) {
+				this.hands = new int[n];
+				this.shownCards = new Card[n * 2];
+			}
+			for (int i = 0; i < n; i++) {
+				PlayerState winner = winners.get(i);
+				winnerIds[i] = winner.clientId;
+				payouts[i] = share;
+				if (showCards) {
+					hands[i] = bestHand;
+					shownCards[i * 2] = winner.gameHoleCards[0];
+					shownCards[i * 2 + 1] = winner.gameHoleCards[1];
+				}
+			}
 		}
 
 		// kryo
 		public RoundWinnersDeclarationMessage() {}
 
+		// Chips won by the player, 0 if not a winner
+		public int getPayout(int clientId) {
+			for (int i = 0; i < winnerIds.length; i++) {
+				if (winnerIds[i] == clientId)
+					return payouts[i];
+			}
+			return 0;
+		}
+
 		@Override
 		public String toString() {
-			return super.toString() + ": Round winners" + this.bestPlayers.toString();
+			return super.toString() + ": Round winners " + Arrays.toString(winnerIds) + " -> " + Arrays.toString(payouts);
 		}
 
-		public String winMessageString() {
+		public String winMessageString(Map<Integer, String> names) {
+			int chips = 0;
+			for (int payout : payouts)
+				chips += payout;
 			String s = "\u20AC" + chips + " chips won by ";
-			Iterator<String> playersIt = bestPlayerNames.iterator();
-			while (playersIt.hasNext()) {
-				s = s + " - " + playersIt.next();
+			for (int id : winnerIds) {
+				String name = names.get(id);
+				s = s + " - " + (name == null ? "player " + id : name);
+			}
+			if (showCards) {
+				s = s + " (" + Hand.describe(hands[0]) + ")";
 			}
 			return s;
 		}
@@ -278,14 +309,16 @@ public interface Message {
 		public int smallAmount;
 		public int smallId;
 		public int dealerId;
+		public int numberOfPlayers;   // players dealt into this hand
 
 		
-		public TableButtonsMessage(int dealerId, int smallId, int smallAmount, int bigId, int bigAmount) {
+		public TableButtonsMessage(int dealerId, int smallId, int smallAmount, int bigId, int bigAmount, int numberOfPlayers) {
 			this.dealerId = dealerId;
 			this.smallId = smallId;
 			this.smallAmount = smallAmount;
 			this.bigId = bigId;
 			this.bigAmount = bigAmount;
+			this.numberOfPlayers = numberOfPlayers;
 		}
 
 		// kryo
@@ -293,8 +326,8 @@ public interface Message {
 		
 		@Override
 		public String toString() {
-			return String.format("%s: dealer=%d; small(%d)=%d; big(%d)=%d",
-					super.toString(), dealerId, smallId, smallAmount, bigId, bigAmount);
+			return String.format("%s: dealer=%d; small(%d)=%d; big(%d)=%d; players=%d",
+					super.toString(), dealerId, smallId, smallAmount, bigId, bigAmount, numberOfPlayers);
 		}
 	}
 
@@ -315,6 +348,101 @@ public interface Message {
 		}
 	}
 
+	// Everything broadcast for one table event (an action with the pool and state
+	// changes it causes, say), in order. Clients handle the updates as if they
+	// arrived one by one.
+	// seq numbers the updates of a table one by one; a client that sees a gap asks
+	// for a TableStateMessage with a TableStateRequestMessage.
+	public static class TableUpdateMessage extends TimestampedMessage {
+
+		public int seq;
+		public Message[] updates;
+
+		public TableUpdateMessage(int seq, Message[] updates) {
+			this.seq = seq;
+			this.updates = updates;
+		}
+
+		// kryo
+		public TableUpdateMessage() {}
+
+		@Override
+		public String toString() {
+			return super.toString() + ": Table update " + seq + " " + Arrays.toString(updates);
+		}
+	}
+
+	// A player as everyone at the table sees it
+	public static final class SeatState {
+		public int clientId;
+		public String name;
+		public int avatar;
+		public int money;
+		public int roundMoney;
+		public ClientActionType action;
+
+		public SeatState(PlayerState player) {
+			this.clientId = player.clientId;
+			this.name = player.name;
+			this.avatar = player.avatar;
+			this.money = player.money;
+			this.roundMoney = player.roundMoney;
+			this.action = player.roundActionType;
+		}
+
+		// kryo
+		public SeatState() {}
+
+		@Override
+		public String toString() {
+			return clientId + ": " + name + " - " + money + " - " + action + "(" + roundMoney + ")";
+		}
+	}
+
+	// The whole table as one player sees it after update seq. Sent when joining,
+	// when coming back after a lost connection and when asked for.
+	public static class TableStateMessage extends TimestampedMessage {
+
+		public int seq;
+		public PokerGameState gameState;
+		public int pool;
+		public int minBet;
+		public Card[] board;
+		public int dealerId, smallId, bigId;   // -1 between hands
+		public int playersInHand;
+		public SeatState[] seats;
+		public Card[] holeCards;               // of the receiver, null if not dealt in
+		public int futureId;                   // when the receiver is to act, 0 otherwise
+		public int round;
+
+		// kryo
+		public TableStateMessage() {}
+
+		@Override
+		public String toString() {
+			return super.toString() + ": Table state " + seq + ", " + gameState +
+					", pool -> " + pool + ", board -> " + Arrays.toString(board) +
+					", seats -> " + Arrays.toString(seats);
+		}
+	}
+
+	public static class TableStateRequestMessage extends TimestampedMessage {
+
+		public int seq;   // last update received
+
+		public TableStateRequestMessage(int seq) {
+			this.seq = seq;
+		}
+
+		// kryo
+		public TableStateRequestMessage() {}
+
+		@Override
+		public String toString() {
+			return super.toString() + ": Table state request after " + seq;
+		}
+	}
+
 	public class SetIDMessage extends TimestampedMessage implements Message {
 
 		public int id;
@@ -339,13 +467,19 @@ public interface Message {
 		public String nickname;
 		public int avatar;
 		public int money;
+		public int tableId;   // table to sit at, see GameServer
 
 		public SetClientParameterMessage(int clientId, boolean reconnect, String nickname, int avatar, int money) {
+			this(clientId, reconnect, nickname, avatar, money, GameServer.DEFAULT_TABLE);
+		}
+
+		public SetClientParameterMessage(int clientId, boolean reconnect, String nickname, int avatar, int money, int tableId) {
 			this.clientId = clientId;
 			this.reconnect = reconnect;
 			this.nickname = nickname;
 			this.avatar = avatar;
 			this.money = money;
+			this.tableId = tableId;
 		}
 
 		// kryo
@@ -358,11 +492,29 @@ public interface Message {
 					"reconnect -> " + reconnect + ", "+
 					"nickname -> " + nickname + ", "+
 					"avatar -> " + avatar + ", "+
-					"money -> " + money;
+					"money -> " + money + ", "+
+					"table -> " + tableId;
 		}
 	}
 	
 
+	// Sent instead of SetClientParameterMessage to watch a table without playing
+	public static class SpectateMessage extends TimestampedMessage {
+		public int tableId;
+
+		public SpectateMessage(int tableId) {
+			this.tableId = tableId;
+		}
+
+		// kryo
+		public SpectateMessage() {}
+
+		@Override
+		public String toString() {
+			return super.toString() + ": Spectate table " + tableId;
+		}
+	}
+
 	public static class SetNicknameMessage extends TimestampedMessage {
 		public String nickname;
 
@@ -379,6 +531,27 @@ public interface Message {
 		}
 	}
 	
+	// A player sat down at the table or changed nickname
+	public static class PlayerInfoMessage extends TimestampedMessage {
+		public int clientId;
+		public String name;
+		public int avatar;
+
+		public PlayerInfoMessage(PlayerState player) {
+			this.clientId = player.clientId;
+			this.name = player.name;
+			this.avatar = player.avatar;
+		}
+
+		// kryo
+		public PlayerInfoMessage() {}
+
+		@Override
+		public String toString() {
+			return super.toString() + ": Player " + clientId + " is " + name;
+		}
+	}
+
 	public class ResetMessage extends TimestampedMessage implements Message {
 		// kryo
 		public ResetMessage() {}
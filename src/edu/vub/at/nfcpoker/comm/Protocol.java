@@ -0,0 +1,102 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker.comm;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
+
+import edu.vub.at.nfcpoker.Card;
+import edu.vub.at.nfcpoker.PokerGameState;
+import edu.vub.at.nfcpoker.comm.Message.CheatMessage;
+import edu.vub.at.nfcpoker.comm.Message.ClientAction;
+import edu.vub.at.nfcpoker.comm.Message.ClientActionMessage;
+import edu.vub.at.nfcpoker.comm.Message.ClientActionType;
+import edu.vub.at.nfcpoker.comm.Message.FutureMessage;
+import edu.vub.at.nfcpoker.comm.Message.PlayerInfoMessage;
+import edu.vub.at.nfcpoker.comm.Message.PoolMessage;
+import edu.vub.at.nfcpoker.comm.Message.ReceiveHoleCardsMessage;
+import edu.vub.at.nfcpoker.comm.Message.ReceivePublicCards;
+import edu.vub.at.nfcpoker.comm.Message.RequestClientActionFutureMessage;
+import edu.vub.at.nfcpoker.comm.Message.ResetMessage;
+import edu.vub.at.nfcpoker.comm.Message.RoundWinnersDeclarationMessage;
+import edu.vub.at.nfcpoker.comm.Message.SeatState;
+import edu.vub.at.nfcpoker.comm.Message.SetClientParameterMessage;
+import edu.vub.at.nfcpoker.comm.Message.SetIDMessage;
+import edu.vub.at.nfcpoker.comm.Message.SetNicknameMessage;
+import edu.vub.at.nfcpoker.comm.Message.SpectateMessage;
+import edu.vub.at.nfcpoker.comm.Message.StateChangeMessage;
+import edu.vub.at.nfcpoker.comm.Message.TableButtonsMessage;
+import edu.vub.at.nfcpoker.comm.Message.TableStateMessage;
+import edu.vub.at.nfcpoker.comm.Message.TableStateRequestMessage;
+import edu.vub.at.nfcpoker.comm.Message.TableUpdateMessage;
+import edu.vub.at.nfcpoker.comm.Message.TimestampedMessage;
+import edu.vub.at.nfcpoker.comm.Message.ToastMessage;
+
+// The classes that go over a game connection, each with a fixed ID, so Kryo writes
+// a one byte ID instead of the class name. Client and server must register the same
+// classes under the same IDs: give a new class a new ID and never reuse an old one.
+// Anything else is refused when sent.
+public final class Protocol {
+
+	private Protocol() {}
+
+	public static void register(Kryo k) {
+		k.setRegistrationRequired(true);
+
+		// Values inside messages
+		k.register(Card.class, new CardSerializer(), 32);
+		k.register(Card[].class, 33);
+		k.register(ClientActionType.class, 34);
+		k.register(PokerGameState.class, 35);
+		k.register(ClientAction.class, 36);
+		k.register(SeatState.class, 39);
+		k.register(SeatState[].class, 40);
+		k.register(Message[].class, 41);
+		k.register(int[].class, 42);
+
+		// Messages
+		message(k, StateChangeMessage.class, 50);
+		message(k, ReceiveHoleCardsMessage.class, 51);
+		message(k, ReceivePublicCards.class, 52);
+		message(k, FutureMessage.class, 53);
+		message(k, RequestClientActionFutureMessage.class, 54);
+		message(k, ClientActionMessage.class, 55);
+		message(k, RoundWinnersDeclarationMessage.class, 56);
+		message(k, ToastMessage.class, 57);
+		message(k, CheatMessage.class, 58);
+		message(k, TableButtonsMessage.class, 59);
+		message(k, PoolMessage.class, 60);
+		message(k, TableUpdateMessage.class, 61);
+		message(k, TableStateMessage.class, 62);
+		message(k, TableStateRequestMessage.class, 63);
+		message(k, SetIDMessage.class, 64);
+		message(k, SetClientParameterMessage.class, 65);
+		message(k, SpectateMessage.class, 66);
+		message(k, SetNicknameMessage.class, 67);
+		message(k, ResetMessage.class, 68);
+		message(k, PlayerInfoMessage.class, 69);
+	}
+
+	// The timestamp stays behind: a message read from the wire is stamped when it arrives
+	private static void message(Kryo k, Class<? extends TimestampedMessage> type, int id) {
+		FieldSerializer<?> serializer = new FieldSerializer<TimestampedMessage>(k, type);
+		serializer.removeField("timestamp");
+		k.register(type, serializer, id);
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker.simulation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.esotericsoftware.kryonet.Connection;
+
+import edu.vub.at.commlib.CommLib;
+import edu.vub.at.nfcpoker.Card;
+import edu.vub.at.nfcpoker.CardSet;
+import edu.vub.at.nfcpoker.PlayerState;
+import edu.vub.at.nfcpoker.PokerGameState;
+import edu.vub.at.nfcpoker.comm.BroadcastSerialization.SerializedMessage;
+import edu.vub.at.nfcpoker.comm.Message;
+import edu.vub.at.nfcpoker.comm.Message.ClientAction;
+import edu.vub.at.nfcpoker.comm.Message.ClientActionMessage;
+import edu.vub.at.nfcpoker.comm.Message.ClientActionType;
+import edu.vub.at.nfcpoker.comm.Message.ReceiveHoleCardsMessage;
+import edu.vub.at.nfcpoker.comm.Message.ReceivePublicCards;
+import edu.vub.at.nfcpoker.comm.Message.RequestClientActionFutureMessage;
+import edu.vub.at.nfcpoker.comm.Message.SeatState;
+import edu.vub.at.nfcpoker.comm.Message.StateChangeMessage;
+import edu.vub.at.nfcpoker.comm.Message.TableButtonsMessage;
+import edu.vub.at.nfcpoker.comm.Message.TableStateMessage;
+import edu.vub.at.nfcpoker.comm.Message.TableUpdateMessage;
+
+// A player that lives inside the server process.
+// PokerGame talks to it as to any other client connection: messages sent to it are
+// handled on the spot, and action requests are answered by resolving the future
+// right away, so the game never waits on the network.
+// It only keeps what a real client could know from the messages it receives.
+public class Bot extends Connection {
+	private final int clientId;
+	private final BotStrategy strategy;
+
+	private PlayerState player;
+	private Card[] holeCards;
+	private final CardSet board = new CardSet();
+	private final Map<Integer, Integer> roundBets = new HashMap<Integer, Integer>();
+	private int minBet;
+	private int playersInHand;
+	private int actionRound;
+
+	public Bot(int clientId, BotStrategy strategy) {
+		this.clientId = clientId;
+		this.strategy = strategy;
+	}
+
+	@Override
+	public int sendTCP(Object m) {
+		if (m instanceof SerializedMessage) {
+			m = ((SerializedMessage) m).message;
+		}
+		if (m instanceof TableUpdateMessage) {
+			for (Message update : ((TableUpdateMessage) m).updates) {
+				sendTCP(update);
+			}
+			return 0;
+		}
+		if (m instanceof RequestClientActionFutureMessage) {
+			RequestClientActionFutureMessage rcafm = (RequestClientActionFutureMessage) m;
+			actionRound = rcafm.round;
+			CommLib.resolveFuture(this, rcafm.futureId, strategy.act(this));
+		} else if (m instanceof ClientActionMessage) {
+			ClientActionMessage cam = (ClientActionMessage) m;
+			ClientAction ca = cam.getClientAction();
+			if (ca.actionType == ClientActionType.Fold) {
+				playersInHand--;
+			} else if (ca.actionType == ClientActionType.AllIn) {
+				// PokerGame raises the bet by the whole all-in amount
+				addRoundBet(cam.userId, ca.extraMoney);
+				minBet += ca.extraMoney;
+			} else {
+				addRoundBet(cam.userId, ca.extraMoney);
+			}
+		} else if (m instanceof TableButtonsMessage) {
+			TableButtonsMessage tbm = (TableButtonsMessage) m;
+			playersInHand = tbm.numberOfPlayers;
+			addRoundBet(tbm.smallId, tbm.smallAmount);
+			addRoundBet(tbm.bigId, tbm.bigAmount);
+		} else if (m instanceof ReceiveHoleCardsMessage) {
+			ReceiveHoleCardsMessage rhcm = (ReceiveHoleCardsMessage) m;
+			holeCards = new Card[] { rhcm.card1, rhcm.card2 };
+		} else if (m instanceof ReceivePublicCards) {
+			board.addAll(((ReceivePublicCards) m).cards);
+		} else if (m instanceof TableStateMessage) {
+			TableStateMessage tsm = (TableStateMessage) m;
+			holeCards = tsm.holeCards;
+			board.clear();
+			board.addAll(tsm.board);
+			roundBets.clear();
+			for (SeatState seat : tsm.seats) {
+				roundBets.put(seat.clientId, seat.roundMoney);
+			}
+			minBet = tsm.minBet;
+			playersInHand = tsm.playersInHand;
+			actionRound = tsm.round;
+		} else if (m instanceof StateChangeMessage) {
+			PokerGameState newState = ((StateChangeMessage) m).newState;
+			if (newState == PokerGameState.PREFLOP) {
+				board.clear();
+			}
+			roundBets.clear();
+			minBet = 0;
+		}
+		return 0;
+	}
+
+	@Override
+	public int sendUDP(Object m) {
+		return sendTCP(m);
+	}
+
+	private void addRoundBet(int id, int extra) {
+		Integer bet = roundBets.get(id);
+		int total = (bet == null ? 0 : bet) + extra;
+		roundBets.put(id, total);
+		if (total > minBet) {
+			minBet = total;
+		}
+	}
+
+	// Actions
+
+	// Checks, or calls the current bet; all-in when that is more than we have.
+	public ClientAction call() {
+		int toCall = getToCall();
+		if (toCall >= getMoney()) {
+			return new ClientAction(ClientActionType.AllIn, getRoundMoney(), getMoney());
+		}
+		return new ClientAction(ClientActionType.Check, getRoundMoney(), toCall);
+	}
+
+	// Raises by amount on top of the current bet. The game only lets the first
+	// action of a betting round raise, later ones call instead.
+	public ClientAction raise(int amount) {
+		if (actionRound > 0 || amount <= 0) {
+			return call();
+		}
+		int extra = getToCall() + amount;
+		if (extra >= getMoney()) {
+			return new ClientAction(ClientActionType.AllIn, getRoundMoney(), getMoney());
+		}
+		return new ClientAction(ClientActionType.Bet, getRoundMoney(), extra);
+	}
+
+	public ClientAction fold() {
+		return new ClientAction(ClientActionType.Fold, getRoundMoney(), 0);
+	}
+
+	// State
+
+	void setPlayer(PlayerState player) {
+		this.player = player;
+	}
+
+	public PlayerState getPlayer() {
+		return player;
+	}
+
+	public int getClientId() {
+		return clientId;
+	}
+
+	public BotStrategy getStrategy() {
+		return strategy;
+	}
+
+	public Card[] getHoleCards() {
+		return holeCards;
+	}
+
+	public long getHoleCardBits() {
+		return CardSet.bits(holeCards);
+	}
+
+	public CardSet getBoard() {
+		return board;
+	}
+
+	// Chips left in front of us
+	public int getMoney() {
+		return player == null ? 0 : player.money;
+	}
+
+	// What we put in during the current betting round
+	public int getRoundMoney() {
+		Integer bet = roundBets.get(clientId);
+		return bet == null ? 0 : bet;
+	}
+
+	public int getMinBet() {
+		return minBet;
+	}
+
+	public int getToCall() {
+		return Math.max(0, minBet - getRoundMoney());
+	}
+
+	// Players that have not folded, ourselves included
+	public int getPlayersInHand() {
+		return playersInHand;
+	}
+
+	// 0 for the first request of a betting round, 1 when asked again after a raise
+	public int getActionRound() {
+		return actionRound;
+	}
+
+	@Override
+	public String toString() {
+		return "Bot " + clientId + " (" + strategy + ")";
+	}
+}
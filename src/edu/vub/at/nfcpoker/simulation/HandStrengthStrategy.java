@@ -0,0 +1,58 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker.simulation;
+
+import edu.vub.at.nfcpoker.Card;
+import edu.vub.at.nfcpoker.HandEvaluators;
+import edu.vub.at.nfcpoker.HandRank;
+import edu.vub.at.nfcpoker.PokerGame;
+import edu.vub.at.nfcpoker.PreflopTable;
+import edu.vub.at.nfcpoker.comm.Message.ClientAction;
+
+// Plays its cards: preflop by the precomputed equity against the players in the
+// hand, afterwards by the category of its best hand so far.
+public class HandStrengthStrategy implements BotStrategy {
+
+	@Override
+	public ClientAction act(Bot bot) {
+		int players = Math.max(2, bot.getPlayersInHand());
+		if (bot.getBoard().isEmpty() && PreflopTable.covers(players)) {
+			Card[] hole = bot.getHoleCards();
+			double share = PreflopTable.lookup(hole[0], hole[1], players).equity() * players;
+			if (share > 1.5)
+				return bot.raise(PokerGame.BIG_BLIND * 2);
+			if (share > 0.9 || bot.getToCall() == 0)
+				return bot.call();
+			return bot.fold();
+		}
+
+		long cards = bot.getBoard().getBits() | bot.getHoleCardBits();
+		int category = HandRank.category(HandEvaluators.getDefault().evaluate(cards));
+		if (category >= HandRank.TWO_PAIR)
+			return bot.raise(PokerGame.BIG_BLIND * (category - 1));
+		if (category >= HandRank.PAIR || bot.getToCall() == 0)
+			return bot.call();
+		return bot.fold();
+	}
+
+	@Override
+	public String toString() {
+		return "hand strength";
+	}
+}
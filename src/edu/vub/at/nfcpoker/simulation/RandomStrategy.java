@@ -0,0 +1,54 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker.simulation;
+
+import edu.vub.at.nfcpoker.PokerGame;
+import edu.vub.at.nfcpoker.XorShiftRandom;
+import edu.vub.at.nfcpoker.comm.Message.ClientAction;
+
+// Folds, calls or raises at random, whatever the cards.
+public class RandomStrategy implements BotStrategy {
+	private final XorShiftRandom random;
+	private final double foldChance, raiseChance;
+
+	public RandomStrategy(long seed) {
+		this(seed, 0.15, 0.15);
+	}
+
+	public RandomStrategy(long seed, double foldChance, double raiseChance) {
+		this.random = new XorShiftRandom(seed);
+		this.foldChance = foldChance;
+		this.raiseChance = raiseChance;
+	}
+
+	@Override
+	public ClientAction act(Bot bot) {
+		double r = random.nextDouble();
+		if (bot.getToCall() > 0 && r < foldChance)
+			return bot.fold();
+		if (r > 1 - raiseChance)
+			return bot.raise(PokerGame.BIG_BLIND * (1 + random.nextInt(4)));
+		return bot.call();
+	}
+
+	@Override
+	public String toString() {
+		return "random";
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker.simulation;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import android.content.Context;
+import edu.vub.at.commlib.CommLib;
+import edu.vub.at.nfcpoker.Card;
+import edu.vub.at.nfcpoker.PlayerState;
+import edu.vub.at.nfcpoker.PokerGame;
+import edu.vub.at.nfcpoker.PokerGameState;
+import edu.vub.at.nfcpoker.ui.ServerViewInterface;
+
+// One PokerGame played by bots for a fixed number of hands, on a virtual clock.
+// The table plays the part of the server GUI to follow the game: it counts hands,
+// refills the stacks of broke bots and stops the game when enough hands are played.
+// Its events run on the thread that calls run(), so the table needs no thread of its own.
+public class SimulatedTable implements ServerViewInterface {
+	// PokerGame hands out this stack and resets to it at the end of a game
+	public static final int STACK = 2000;
+
+	// Events are handled as soon as they are posted
+	private static final Executor CALLER_RUNS = new Executor() {
+		@Override
+		public void execute(Runnable r) {
+			r.run();
+		}
+	};
+
+	private final PokerGame game;
+	private final VirtualClock clock = new VirtualClock(0);
+	private final Bot[] bots;
+	private final long handsToPlay;
+
+	// Only touched from the game thread, read after join()
+	private long hands;
+	private final int[] rebuys;
+	private final long[] rebuyChips;
+	private final int[] finalMoney;
+
+	public SimulatedTable(BotStrategy[] strategies, long handsToPlay) {
+		// A failure should stop the simulation, not be papered over by a new hand
+		this.game = new PokerGame(this, CALLER_RUNS, clock, PokerGame.RETHROW);
+		this.game.setLogging(false);
+		this.handsToPlay = handsToPlay;
+		this.bots = new Bot[strategies.length];
+		this.rebuys = new int[strategies.length];
+		this.rebuyChips = new long[strategies.length];
+		this.finalMoney = new int[strategies.length];
+		for (int i = 0; i < strategies.length; i++) {
+			bots[i] = newBot(i, strategies[i]);
+			game.addPlayer(bots[i], i, bots[i].toString(), 0, STACK);
+		}
+	}
+
+	// The bot for a seat. Called from the constructor, before the bot joins the game.
+	protected Bot newBot(int seat, BotStrategy strategy) {
+		return new Bot(seat, strategy);
+	}
+
+	// Plays all hands on the calling thread and returns when they are done.
+	// Between two timers the game only waits for the bots, which answer right away.
+	public void run() {
+		game.start();
+		while (!game.isFinished() && clock.runNext()) {
+			// the next hand was dealt
+		}
+		for (Bot bot : bots)
+			CommLib.futures.remove(bot);
+	}
+
+	public long getHands() {
+		return hands;
+	}
+
+	public int getSeats() {
+		return bots.length;
+	}
+
+	public BotStrategy getStrategy(int seat) {
+		return bots[seat].getStrategy();
+	}
+
+	// Chips won or lost by a seat, rebuys deducted
+	public long getNet(int seat) {
+		return finalMoney[seat] - STACK - rebuyChips[seat];
+	}
+
+	public int getRebuys(int seat) {
+		return rebuys[seat];
+	}
+
+	public long getVirtualMillis() {
+		return clock.currentTimeMillis();
+	}
+
+	// Table
+
+	@Override
+	public void resetCards() {
+		// A new hand starts: give broke bots a new stack so the table stays full
+		for (int i = 0; i < bots.length; i++) {
+			int money = bots[i].getMoney();
+			if (money < PokerGame.BIG_BLIND) {
+				// We are called from the game's own event, so the stack can be topped up in place
+				rebuys[i]++;
+				rebuyChips[i] += STACK - money;
+				bots[i].getPlayer().money = STACK;
+			}
+		}
+	}
+
+	@Override
+	public void updateGameState(PokerGameState newState) {
+		if (newState == PokerGameState.END_OF_ROUND && ++hands >= handsToPlay) {
+			game.finish();
+		}
+	}
+
+	@Override
+	public void resetGame() {
+		// Called before the stacks are reset
+		if (game.isFinished()) {
+			for (int i = 0; i < bots.length; i++) {
+				finalMoney[i] = bots[i].getMoney();
+			}
+		}
+	}
+
+	@Override
+	public void revealCards(Card[] cards) {}
+
+	@Override
+	public void updatePoolMoney(int chipsPool) {}
+
+	@Override
+	public void setPlayerButtons(PlayerState dealer, PlayerState smallBlind, PlayerState bigBlind) {}
+
+	// Players
+
+	@Override
+	public void addPlayer(PlayerState player) {
+		bots[player.clientId].setPlayer(player);
+	}
+
+	@Override
+	public void updatePlayerStatus(PlayerState player) {}
+
+	@Override
+	public void removePlayer(PlayerState player) {}
+
+	// Other
+
+	@Override
+	public Context getContext() {
+		return null;
+	}
+
+	@Override
+	public void showWinners(List<PlayerState> remainingPlayers, int chipsPool) {}
+}
@@ -0,0 +1,137 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker.simulation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// Plays many simulated tables side by side, one per core, and reports how fast
+// the hands went and how each strategy fared.
+public class Simulator {
+
+	// Decides which strategies sit at a table
+	public interface Lineup {
+		BotStrategy[] seat(int table);
+	}
+
+	public static class Result {
+		public final long hands;
+		public final long millis;
+		public final long virtualMillis;
+		// Per strategy (by name): seats played, chips won, rebuys
+		public final Map<String, long[]> byStrategy = new LinkedHashMap<String, long[]>();
+
+		Result(List<SimulatedTable> tables, long millis) {
+			long hands = 0, virtualMillis = 0;
+			for (SimulatedTable table : tables) {
+				hands += table.getHands();
+				virtualMillis += table.getVirtualMillis();
+				for (int seat = 0; seat < table.getSeats(); seat++) {
+					String name = table.getStrategy(seat).toString();
+					long[] stats = byStrategy.get(name);
+					if (stats == null) {
+						stats = new long[3];
+						byStrategy.put(name, stats);
+					}
+					stats[0]++;
+					stats[1] += table.getNet(seat);
+					stats[2] += table.getRebuys(seat);
+				}
+			}
+			this.hands = hands;
+			this.millis = millis;
+			this.virtualMillis = virtualMillis;
+		}
+
+		public double handsPerSecond() {
+			return hands * 1000.0 / Math.max(1, millis);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(hands).append(" hands in ").append(millis).append(" ms (")
+			  .append(Math.round(handsPerSecond())).append(" hands/s, ")
+			  .append(virtualMillis / 3600000).append(" hours of table time)");
+			for (Map.Entry<String, long[]> e : byStrategy.entrySet()) {
+				long[] stats = e.getValue();
+				sb.append("\n  ").append(e.getKey()).append(": ")
+				  .append(stats[0]).append(" seats, ")
+				  .append(stats[1] >= 0 ? "+" : "").append(stats[1]).append(" chips, ")
+				  .append(stats[2]).append(" rebuys");
+			}
+			return sb.toString();
+		}
+	}
+
+	private final int threads;
+
+	public Simulator() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public Simulator(int threads) {
+		this.threads = threads;
+	}
+
+	public Result run(int tables, final long handsPerTable, Lineup lineup) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "wePoker - Simulator");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		try {
+			List<java.util.concurrent.Future<SimulatedTable>> running = new ArrayList<java.util.concurrent.Future<SimulatedTable>>();
+			long start = System.nanoTime();
+			for (int i = 0; i < tables; i++) {
+				final BotStrategy[] strategies = lineup.seat(i);
+				running.add(executor.submit(new Callable<SimulatedTable>() {
+					@Override
+					public SimulatedTable call() throws Exception {
+						SimulatedTable table = new SimulatedTable(strategies, handsPerTable);
+						table.run();
+						return table;
+					}
+				}));
+			}
+			List<SimulatedTable> done = new ArrayList<SimulatedTable>();
+			for (java.util.concurrent.Future<SimulatedTable> f : running) {
+				try {
+					done.add(f.get());
+				} catch (ExecutionException e) {
+					throw new RuntimeException("Simulated table failed", e.getCause());
+				}
+			}
+			long millis = (System.nanoTime() - start) / 1000000;
+			return new Result(done, millis);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package edu.vub.at.nfcpoker.simulation;
+
+import java.util.PriorityQueue;
+
+import edu.vub.at.nfcpoker.Clock;
+
+// Time that only moves when the next scheduled task is run: runNext() jumps
+// straight to its deadline, so waiting takes no real time at all.
+public class VirtualClock implements Clock {
+
+	private class Task implements Timeout, Comparable<Task> {
+		final long due, sequence;
+		final Runnable runnable;
+
+		Task(long due, long sequence, Runnable runnable) {
+			this.due = due;
+			this.sequence = sequence;
+			this.runnable = runnable;
+		}
+
+		@Override
+		public void cancel() {
+			synchronized (VirtualClock.this) {
+				tasks.remove(this);
+			}
+		}
+
+		@Override
+		public int compareTo(Task another) {
+			if (due != another.due)
+				return due < another.due ? -1 : 1;
+			return sequence < another.sequence ? -1 : (sequence == another.sequence ? 0 : 1);
+		}
+	}
+
+	private final PriorityQueue<Task> tasks = new PriorityQueue<Task>();
+	private long now;
+	private long sequence;
+
+	public VirtualClock(long start) {
+		this.now = start;
+	}
+
+	@Override
+	public synchronized long currentTimeMillis() {
+		return now;
+	}
+
+	@Override
+	public synchronized Timeout schedule(Runnable runnable, long delayMillis) {
+		Task task = new Task(now + Math.max(0, delayMillis), sequence++, runnable);
+		tasks.add(task);
+		return task;
+	}
+
+	// Advances to the earliest scheduled task and runs it on the calling thread.
+	// Returns false when nothing is scheduled.
+	public boolean runNext() {
+		Task task;
+		synchronized (this) {
+			task = tasks.poll();
+			if (task == null)
+				return false;
+			now = Math.max(now, task.due);
+		}
+		task.runnable.run();
+		return true;
+	}
+}
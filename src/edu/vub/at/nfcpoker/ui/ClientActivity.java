@@ -22,14 +22,12 @@ package edu.vub.at.nfcpoker.ui;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
+import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.UUID;
 
 import android.app.Activity;
 import android.app.AlertDialog;
@@ -87,13 +85,14 @@ import com.esotericsoftware.kryonet.Listener;
 import edu.vub.at.commlib.CommLib;
 import edu.vub.at.commlib.CommLibConnectionInfo;
 import edu.vub.at.nfcpoker.Card;
+import edu.vub.at.nfcpoker.Equity;
 import edu.vub.at.nfcpoker.Constants;
 import edu.vub.at.nfcpoker.PokerGameState;
-import edu.vub.at.nfcpoker.PlayerState;
 import edu.vub.at.nfcpoker.QRNFCFunctions;
 import edu.vub.at.nfcpoker.R;
 import edu.vub.at.nfcpoker.WePokerPreferencesActivity;
 import edu.vub.at.nfcpoker.comm.GameServer;
+import edu.vub.at.nfcpoker.comm.Message;
 import edu.vub.at.nfcpoker.comm.Message.CheatMessage;
 import edu.vub.at.nfcpoker.comm.Message.ClientAction;
 import edu.vub.at.nfcpoker.comm.Message.ClientActionMessage;
@@ -101,18 +100,26 @@ import edu.vub.at.nfcpoker.comm.Message.ClientActionType;
 import edu.vub.at.nfcpoker.comm.Message.FutureMessage;
 import edu.vub.at.nfcpoker.comm.Message.ResetMessage;
 import edu.vub.at.nfcpoker.comm.Message.SetClientParameterMessage;
+import edu.vub.at.nfcpoker.comm.Message.PlayerInfoMessage;
 import edu.vub.at.nfcpoker.comm.Message.PoolMessage;
 import edu.vub.at.nfcpoker.comm.Message.ReceiveHoleCardsMessage;
 import edu.vub.at.nfcpoker.comm.Message.ReceivePublicCards;
 import edu.vub.at.nfcpoker.comm.Message.RequestClientActionFutureMessage;
 import edu.vub.at.nfcpoker.comm.Message.RoundWinnersDeclarationMessage;
 import edu.vub.at.nfcpoker.comm.Message.SetIDMessage;
+import edu.vub.at.nfcpoker.comm.Message.SeatState;
 import edu.vub.at.nfcpoker.comm.Message.SetNicknameMessage;
 import edu.vub.at.nfcpoker.comm.Message.StateChangeMessage;
 import edu.vub.at.nfcpoker.comm.Message.TableButtonsMessage;
+import edu.vub.at.nfcpoker.comm.Message.TableStateMessage;
+import edu.vub.at.nfcpoker.comm.Message.TableStateRequestMessage;
+import edu.vub.at.nfcpoker.comm.Message.TableUpdateMessage;
+import edu.vub.at.nfcpoker.comm.Message.ToastMessage;
 import edu.vub.at.nfcpoker.settings.Settings;
 import edu.vub.at.nfcpoker.ui.ServerActivity.ServerStarter;
 import edu.vub.at.nfcpoker.ui.tools.CardScoreUtility;
+import edu.vub.at.nfcpoker.ui.tools.PredictionSession;
+import edu.vub.at.nfcpoker.ui.tools.PredictionSession.PredictionListener;
 import edu.vub.at.nfcpoker.ui.tools.Levenshtein;
 import edu.vub.at.nfcpoker.ui.tools.PageProvider;
 import fi.harism.curl.CurlView;
@@ -200,7 +207,8 @@ public class ClientActivity extends Activity implements OnClickListener, SharedP
 	private int currentProcessedBet = 0; // Bet's forwarded to server
 	private int minimumBet = 0;          // Minimum bet
 	private int totalBet = 0;            // Total bet for this game
-	private Set<Card> tableCards = new HashSet<Card>();
+	private int playersInRound = 2;      // Players that did not fold yet (including us)
+	private PredictionSession prediction;
 
 	// Server
 	private static boolean isDedicated = false;
@@ -211,9 +219,13 @@ public class ClientActivity extends Activity implements OnClickListener, SharedP
 	private static String serverWifiName;
 	private static String serverWifiPassword;
 	private static boolean serverWifiDirect;
+	private static int serverTableId;
 
 	// Connectivity
-	private static UUID pendingFuture;
+	private static int pendingFuture;
+	private int tableSeq = -1;           // Last table update handled, -1 until the table state arrived
+	private boolean resyncing = false;   // Asked for the table state after missing updates
+	private Map<Integer, String> playerNames = new HashMap<Integer, String>();   // Names at the table by client ID
 	private static Connection serverConnection;
 	private static Client clientConnection;
 	private ReconnectAsyncTask reconnectTask;
@@ -281,6 +293,10 @@ public class ClientActivity extends Activity implements OnClickListener, SharedP
 	// Debug
 	private static boolean debugGUI = false;
 
+	// Set while the network thread handles a TableUpdateMessage, see runOnUiThread
+	private volatile Thread uiBatchThread;
+	private List<Runnable> uiBatch;
+
 	public static void startClient(Activity act,
 			String ip, int port, boolean isDedicated,
 			boolean isServer, String broadcast, String wifiName, String wifiPassword) {
@@ -318,6 +334,7 @@ public class ClientActivity extends Activity implements OnClickListener, SharedP
 		serverWifiName = getIntent().getStringExtra(Constants.INTENT_WIFI_NAME);
 		serverWifiPassword = getIntent().getStringExtra(Constants.INTENT_WIFI_PASSWORD);
 		serverWifiDirect = getIntent().getBooleanExtra(Constants.INTENT_WIFI_DIRECT, false);
+		serverTableId = getIntent().getIntExtra(Constants.INTENT_TABLE_ID, GameServer.DEFAULT_TABLE);
 		
 		// Configure the Client Interface
 		if (isDedicated && !audioFeedback) {
@@ -715,7 +732,6 @@ public class ClientActivity extends Activity implements OnClickListener, SharedP
 				}});
 			break;
 		case PREFLOP:
-			tableCards.clear();
 			toastToShow = "Any preflop bet?";
 			Log.v("wePoker - Client", "Game state changed to PREFLOP");
 			runOnUiThread(new Runnable() {
@@ -747,6 +763,11 @@ public class ClientActivity extends Activity implements OnClickListener, SharedP
 			currentChipSwiped = 0;
 			nextToReveal = 0;
 			lastReceivedHoleCards = null;
+			if (prediction != null) {
+				prediction.cancel();
+				prediction = null;
+				Log.d("wePoker - Client", "Equity cache: " + CardScoreUtility.getCache());
+			}
 			runOnUiThread(new Runnable() {
 				public void run() {
 					updateMoneyTitle();
@@ -766,6 +787,68 @@ public class ClientActivity extends Activity implements OnClickListener, SharedP
 		}
 	}
 
+	// The UI work for all updates of a TableUpdateMessage goes to the UI thread at once
+	@Override
+	public void runOnUiThread(Runnable action) {
+		if (Thread.currentThread() == uiBatchThread) {
+			uiBatch.add(action);
+		} else {
+			super.runOnUiThread(action);
+		}
+	}
+
+	// Rebuilds the view from the whole table state, after joining or missing updates
+	public void processTableStateMessage(final TableStateMessage tsm) {
+		tableSeq = tsm.seq;
+		resyncing = false;
+		if (tsm.holeCards != null) {
+			lastReceivedHoleCards = new ReceiveHoleCardsMessage(tsm.holeCards[0], tsm.holeCards[1]);
+		} else {
+			lastReceivedHoleCards = null;
+		}
+		processStateChangeMessage(null, new StateChangeMessage(tsm.gameState));
+
+		playersInRound = tsm.playersInHand;
+		playerNames.clear();
+		for (SeatState seat : tsm.seats) {
+			playerNames.put(seat.clientId, seat.name);
+			if (seat.clientId == myClientID) {
+				money = seat.money;
+				currentProcessedBet = seat.roundMoney;
+			}
+		}
+		if (prediction != null) {
+			prediction.cancel();
+			prediction = null;
+		}
+		final ReceiveHoleCardsMessage holeCards = lastReceivedHoleCards;
+		if (holeCards != null) {
+			prediction = new PredictionSession(holeCards.card1, holeCards.card2, predictionListener);
+			prediction.setPlayers(playersInRound);
+			prediction.addBoardCards(tsm.board);
+		}
+		runOnUiThread(new Runnable() {
+			public void run() {
+				if (holeCards != null) {
+					hideBarrier();
+					updateHandGui(holeCards);
+				}
+				nextToReveal = 0;
+				serverHideCards();
+				if (showLocalCards() && tsm.board.length > 0) {
+					serverRevealCards(tsm.board);
+				}
+				serverUpdatePoolMoney(tsm.pool);
+				updateMinBetAmount(tsm.minBet);
+				updateBetAmount();
+				updateMoneyTitle();
+			}});
+		if (tsm.futureId != 0) {
+			pendingFuture = tsm.futureId;
+			enableActions(tsm.round);
+		}
+	}
+
 	Listener listener = new Listener() {
 		
 		@Override
@@ -788,6 +871,46 @@ public class ClientActivity extends Activity implements OnClickListener, SharedP
 		public void received(Connection c, Object m) {
 			super.received(c, m);
 
+			if (m instanceof TableUpdateMessage) {
+				TableUpdateMessage tum = (TableUpdateMessage) m;
+				if (tableSeq < 0 || tum.seq <= tableSeq) {
+					// Already part of the table state we have, or there is none yet
+					return;
+				}
+				if (tum.seq != tableSeq + 1) {
+					Log.d("wePoker - Client", "Missed table updates " + (tableSeq + 1) + " to " + (tum.seq - 1));
+					if (!resyncing) {
+						resyncing = true;
+						c.sendTCP(new TableStateRequestMessage(tableSeq));
+					}
+					return;
+				}
+				tableSeq = tum.seq;
+				final List<Runnable> batch = new ArrayList<Runnable>();
+				uiBatch = batch;
+				uiBatchThread = Thread.currentThread();
+				try {
+					for (Message update : tum.updates) {
+						handle(c, update);
+					}
+				} finally {
+					uiBatchThread = null;
+					uiBatch = null;
+				}
+				if (!batch.isEmpty()) {
+					runOnUiThread(new Runnable() {
+						public void run() {
+							for (Runnable r : batch) {
+								r.run();
+							}
+						}});
+				}
+				return;
+			}
+			handle(c, m);
+		}
+
+		private void handle(Connection c, Object m) {
 			Log.v("wePoker - Client", "Received message " + m.toString());
 
 			if (m instanceof StateChangeMessage) {
@@ -796,15 +919,20 @@ public class ClientActivity extends Activity implements OnClickListener, SharedP
 				processStateChangeMessage(c, m);
 			}
 
+			if (m instanceof TableStateMessage) {
+				processTableStateMessage((TableStateMessage) m);
+			}
+
 			if (m instanceof ReceivePublicCards) {
 				ReceivePublicCards newPublicCards = (ReceivePublicCards) m;
 				Log.v("wePoker - Client", "Received public cards: ");
 				final Card[] cards = newPublicCards.cards;
 				for (int i = 0; i < cards.length; i++) {
 					Log.v("wePoker - Client", cards[i].toString() + ", ");
-					tableCards.add(cards[i]);
 				}
-				updatePrediction();
+				if (prediction != null) {
+					prediction.addBoardCards(cards);
+				}
 				if (showLocalCards()) {
 					runOnUiThread(new Runnable() {
 						@Override
@@ -818,7 +946,10 @@ public class ClientActivity extends Activity implements OnClickListener, SharedP
 				final ReceiveHoleCardsMessage newHoleCards = (ReceiveHoleCardsMessage) m;
 				Log.v("wePoker - Client", "Received hand cards: " + newHoleCards.toString());
 				lastReceivedHoleCards = newHoleCards;
-				updatePrediction();
+				if (prediction != null) {
+					prediction.cancel();
+				}
+				prediction = new PredictionSession(newHoleCards.card1, newHoleCards.card2, predictionListener);
 				ClientActivity.this.runOnUiThread(new Runnable() {
 					@Override
 					public void run() {
@@ -832,6 +963,12 @@ public class ClientActivity extends Activity implements OnClickListener, SharedP
 				final ClientAction action = newClientActionMessage.getClientAction();
 				Log.v("wePoker - Client", "Received client action message" + newClientActionMessage.toString());
 				final int amount = action.roundMoney;
+				if (action.actionType == ClientActionType.Fold && newClientActionMessage.userId != myClientID) {
+					playersInRound--;
+					if (prediction != null) {
+						prediction.setPlayers(playersInRound);
+					}
+				}
 				if (amount > minimumBet) {
 					runOnUiThread(new Runnable() {
 						public void run() {
@@ -839,6 +976,24 @@ public class ClientActivity extends Activity implements OnClickListener, SharedP
 						}
 					});
 				}
+				if (action.timedOut && newClientActionMessage.userId == myClientID) {
+					final String what = action.actionType == ClientActionType.Fold ? "folded" : "checked";
+					runOnUiThread(new Runnable() {
+						public void run() {
+							quickOutputMessage(ClientActivity.this, "Time is up, you " + what);
+						}
+					});
+					disableActions();
+				}
+			}
+
+			if (m instanceof ToastMessage) {
+				final ToastMessage tm = (ToastMessage) m;
+				runOnUiThread(new Runnable() {
+					public void run() {
+						quickOutputMessage(ClientActivity.this, tm.message);
+					}
+				});
 			}
 
 			if (m instanceof RequestClientActionFutureMessage) {
@@ -862,6 +1017,10 @@ public class ClientActivity extends Activity implements OnClickListener, SharedP
 			
 			if (m instanceof TableButtonsMessage) {
 				final TableButtonsMessage tbm = (TableButtonsMessage) m;
+				playersInRound = tbm.numberOfPlayers;
+				if (prediction != null) {
+					prediction.setPlayers(playersInRound);
+				}
 				runOnUiThread(new Runnable() {
 					public void run() {
 						if (tbm.smallId == myClientID) {
@@ -896,22 +1055,20 @@ public class ClientActivity extends Activity implements OnClickListener, SharedP
 					myClientID = sidm.id;
 					reconnect = false;
 				}
-				SetClientParameterMessage pm = new SetClientParameterMessage(myClientID, reconnect, Settings.nickname, Settings.avatar, money);
+				SetClientParameterMessage pm = new SetClientParameterMessage(myClientID, reconnect, Settings.nickname, Settings.avatar, money, serverTableId);
 				c.sendTCP(pm);
 			}
 			
+			if (m instanceof PlayerInfoMessage) {
+				PlayerInfoMessage pim = (PlayerInfoMessage) m;
+				playerNames.put(pim.clientId, pim.name);
+			}
+			
 			if (m instanceof RoundWinnersDeclarationMessage) {
 				final RoundWinnersDeclarationMessage rwdm = (RoundWinnersDeclarationMessage) m;
-				final List<PlayerState> players = rwdm.bestPlayers;
-				boolean iWon = false;
-				for (PlayerState player : players) {
-					if (player.clientId == myClientID) {
-						iWon = true;
-						break;
-					}
-				}
-				if (iWon) {
-					money += rwdm.chips / players.size();
+				int won = rwdm.getPayout(myClientID);
+				if (won > 0) {
+					money += won;
 					runOnUiThread(new Runnable() {
 						public void run() {
 							updateMoneyTitle();
@@ -919,10 +1076,11 @@ public class ClientActivity extends Activity implements OnClickListener, SharedP
 							vibrate(VibrationType.Win);
 						}});
 				} else {
+					final String winMessage = rwdm.winMessageString(playerNames);
 					runOnUiThread(new Runnable() {
 						public void run() {
 							quickOutputMessage(ClientActivity.this, "You lost...");
-							quickOutputMessage(ClientActivity.this, rwdm.winMessageString());
+							quickOutputMessage(ClientActivity.this, winMessage);
 							vibrate(VibrationType.Lose);
 					}});
 				}
@@ -965,14 +1123,20 @@ public class ClientActivity extends Activity implements OnClickListener, SharedP
 		updateMoneyTitle();
 	}
 
-	private void updatePrediction() {
-		List<Card> holeCards = Arrays.asList(lastReceivedHoleCards.card1, lastReceivedHoleCards.card2);
-		double prob = CardScoreUtility.evaluateHand(tableCards, holeCards, 3);
-		
-		Intent i = new Intent("edu.vub.at.nfcpoker.smartwatch.UPDATE");
-		i.putExtra("probability", prob / 100.0);
-		sendBroadcast(i);
-	}
+	// Called on the prediction thread
+	PredictionListener predictionListener = new PredictionListener() {
+		@Override
+		public void predictionUpdated(PredictionSession session, Equity equity) {
+			Log.v("wePoker - Client", "Prediction: " + equity);
+
+			Intent i = new Intent("edu.vub.at.nfcpoker.smartwatch.UPDATE");
+			i.putExtra("probability", equity.equity());
+			i.putExtra("win", equity.win);
+			i.putExtra("tie", equity.tie);
+			i.putExtra("lose", equity.lose);
+			sendBroadcast(i);
+		}
+	};
 
 	@Override
 	protected void onResume() {
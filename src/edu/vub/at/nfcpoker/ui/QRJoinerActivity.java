@@ -46,6 +46,7 @@ import edu.vub.at.commlib.CommLib;
 import edu.vub.at.nfcpoker.Constants;
 import edu.vub.at.nfcpoker.QRNFCFunctions;
 import edu.vub.at.nfcpoker.R;
+import edu.vub.at.nfcpoker.comm.GameServer;
 import edu.vub.at.nfcpoker.settings.Settings;
 
 public class QRJoinerActivity extends Activity {
@@ -138,6 +139,7 @@ public class QRJoinerActivity extends Activity {
 	protected boolean wifiIsServer = false;
 	protected String wifiBroadcast = "";
 	protected boolean wifiWifiDirect = false;
+	protected int tableId = GameServer.DEFAULT_TABLE;
 	
 	protected Uri lastScannedNfcUri;
 
@@ -188,6 +190,7 @@ public class QRJoinerActivity extends Activity {
 		i.putExtra(Constants.INTENT_IS_SERVER, wifiIsServer);
 		i.putExtra(Constants.INTENT_BROADCAST, wifiBroadcast);
 		i.putExtra(Constants.INTENT_WIFI_DIRECT, wifiWifiDirect);
+		i.putExtra(Constants.INTENT_TABLE_ID, tableId);
 		startActivity(i);
 		finish();
 	}
@@ -234,6 +237,11 @@ public class QRJoinerActivity extends Activity {
 	    if (uri.getQueryParameter(Constants.INTENT_WIFI_DIRECT) != null) {
 	    	wifiWifiDirect = uri.getQueryParameter(Constants.INTENT_WIFI_DIRECT).equals("true");
 	    }
+	    if (uri.getQueryParameter(Constants.INTENT_TABLE_ID) != null) {
+	    	try {
+	    		tableId = Integer.parseInt(uri.getQueryParameter(Constants.INTENT_TABLE_ID));
+	    	} catch (Exception e) {}
+	    }
 	    Log.v("wePoker - QRJoiner", "New wifi details. ip: "+wifiServerIp+" port: "+wifiPort+" name:"+wifiName+" dedicated:"+wifiIsDedicated);
 	}
 
@@ -19,12 +19,15 @@
 
 package edu.vub.at.nfcpoker.ui;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.ref.WeakReference;
 
 import com.google.zxing.integration.android.IntentIntegrator;
 import com.google.zxing.integration.android.IntentResult;
 
 import android.app.Activity;
+import android.app.ActivityManager;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.BroadcastReceiver;
@@ -52,7 +55,9 @@ import android.widget.Toast;
 import edu.vub.at.commlib.CommLib;
 import edu.vub.at.commlib.CommLibConnectionInfo;
 import edu.vub.at.nfcpoker.Constants;
+import edu.vub.at.nfcpoker.HandEvaluators;
 import edu.vub.at.nfcpoker.R;
+import edu.vub.at.nfcpoker.SevenCardHandEvaluator;
 import edu.vub.at.nfcpoker.WePokerPreferencesActivity;
 import edu.vub.at.nfcpoker.comm.DiscoveryAsyncTask;
 import edu.vub.at.nfcpoker.settings.Settings;
@@ -67,6 +72,10 @@ public class Splash extends Activity {
 	
 	// Discovery
 	private volatile DiscoveryAsyncTask discoveryTask;
+
+	// Hand evaluation tables may take up to 1/8 of our heap
+	private static final int HAND_EVALUATOR_HEAP_SHARE = 8;
+	private static boolean handEvaluatorSelected = false;
 	
 	// UI
 	public static Activity activity;
@@ -86,6 +95,7 @@ public class Splash extends Activity {
 
 		// Settings
 		Settings.loadSettings(this);
+		selectHandEvaluator();
 		
 		
 		View tablet_layout = findViewById(R.id.tablet_layout);
@@ -154,6 +164,33 @@ public class Splash extends Activity {
 		}
 	}
 	
+	private void selectHandEvaluator() {
+		if (handEvaluatorSelected)
+			return;
+		handEvaluatorSelected = true;
+		ActivityManager am = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+		final long budget = am.getMemoryClass() * 1024L * 1024L / HAND_EVALUATOR_HEAP_SHARE;
+		final File table = new File(getFilesDir(), SevenCardHandEvaluator.FILE_NAME);
+		// Generating the 7-card table takes a while, the bit evaluator is used meanwhile.
+		new Thread("wePoker - HandEvaluator") {
+			@Override
+			public void run() {
+				try {
+					HandEvaluators.setDefault(HandEvaluators.select(budget, table));
+				} catch (IOException e) {
+					Log.w("wePoker - Splash", "Could not open " + table + ", falling back to a smaller evaluator", e);
+					table.delete();
+					try {
+						HandEvaluators.setDefault(HandEvaluators.select(budget, null));
+					} catch (IOException e2) {
+						Log.w("wePoker - Splash", "Could not select a hand evaluator, keeping the " + HandEvaluators.getDefault(), e2);
+					}
+				}
+				Log.d("wePoker - Splash", "Using the " + HandEvaluators.getDefault());
+			}
+		}.start();
+	}
+
 	public boolean isWifiDirectSupported() {
 		return getPackageManager().hasSystemFeature(PackageManager.FEATURE_WIFI_DIRECT);
 	}
@@ -1,91 +1,84 @@
 package edu.vub.at.nfcpoker.ui.tools;
 
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.Set;
-
 import edu.vub.at.nfcpoker.Card;
-import edu.vub.at.nfcpoker.Hand;
+import edu.vub.at.nfcpoker.CardSet;
+import edu.vub.at.nfcpoker.Equity;
+import edu.vub.at.nfcpoker.EquityCache;
+import edu.vub.at.nfcpoker.EquityCalculator;
+import edu.vub.at.nfcpoker.PreflopTable;
 
 public class CardScoreUtility {
 
+	// Stop at a standard error of 1%, or after 200ms on slow phones.
+	private static final double ACCURACY = 0.01;
+	private static final long TIME_BUDGET_MILLIS = 200;
+	// On the turn and river, compute the exact equity when it takes at most this many showdowns.
+	private static final double EXACT_SHOWDOWN_LIMIT = 10000000;
+	private static final int CACHE_CAPACITY = 2048;
 
-	public static int evaluateHand(Set<Card> base, Collection<Card> holeCards, int numberOfPlayers){
-
-		if(null==base||base.size()==0){
-
-			// Just the two cards
-			Iterator<Card> it = holeCards.iterator();
-
-			Card card1 = it.next();
-			Card card2 = it.next();
-
-			int topProb = 0;
-			int bottomProb = 0;
-
-			// if there are more than 10 players, approximate to 10 players
-			if(numberOfPlayers>10){
-				numberOfPlayers=10;
-			};
-
-			Card selectedCard;
+	private static EquityCalculator calculator;
+	private static final EquityCache cache = new EquityCache(CACHE_CAPACITY);
 
-			if(card1.getRank()==card2.getRank()){
-
-				// Pairs
-				// Odds from this table: http://www.westonpoker.com/pokerInfo/preFlopOdds.php
-				int[] topPair = {85,73,64,56,49,44,39,35,31};
-				int[] bottomPair = {50,31,22,18,16,14,13,13,12};
-
-				topProb = topPair[numberOfPlayers-2];
-				bottomProb = bottomPair[numberOfPlayers-2];
-
-				selectedCard = card1;
+	private static synchronized EquityCalculator getCalculator() {
+		if (calculator == null) {
+			calculator = new EquityCalculator();
+		}
+		return calculator;
+	}
 
-			} else {
+	public static EquityCache getCache() {
+		return cache;
+	}
 
-				// Non-pairs
-				int[] topNonPair = {67,51,41,35,31,28,25,23,21};
-				int[] bottomNonPair = {31,20,14,11,9,8,7,6,6};
+	// numberOfPlayers: players still in the hand, including ourselves.
+	// Results are cached, see EquityCache.
+	public static Equity evaluateHand(CardSet base, CardSet holeCards, int numberOfPlayers) throws InterruptedException {
+		return evaluateHand(base, holeCards, numberOfPlayers, null);
+	}
 
-				topProb = topNonPair[numberOfPlayers-2];
-				bottomProb = bottomNonPair[numberOfPlayers-2];
+	// byRiver: when the turn is computed here and enumerated exactly, also receives the equity of every river card.
+	// It is left untouched when the turn comes from the cache.
+	public static Equity evaluateHand(CardSet base, CardSet holeCards, int numberOfPlayers, Equity[] byRiver) throws InterruptedException {
+		if (base == null) {
+			base = new CardSet();
+		}
+		if (base.isEmpty() && PreflopTable.covers(numberOfPlayers)) {
+			return computeEquity(base, holeCards, numberOfPlayers, null);
+		}
+		Equity equity = cache.get(holeCards, base, numberOfPlayers);
+		if (equity != null) {
+			return equity;
+		}
 
-				// Approximate using the higher card in the two cards
-				if(getRealRank(card1)>getRealRank(card2)){
-					selectedCard=card1;
-				} else {
-					selectedCard=card2;
+		// When the turn is enumerated exactly, the equity of every river comes for free.
+		Equity[] rivers = base.size() == 4 ? (byRiver != null ? byRiver : new Equity[64]) : null;
+		equity = computeEquity(base, holeCards, numberOfPlayers, rivers);
+		cache.put(holeCards, base, numberOfPlayers, equity);
+		if (rivers != null) {
+			for (int i = 0; i < rivers.length; i++) {
+				if (rivers[i] != null) {
+					cache.put(holeCards, new CardSet(base.getBits() | (1L << i)), numberOfPlayers, rivers[i]);
 				}
-
-			}
-
-			// return linear approximation of probability 
-			return bottomProb + ((topProb-bottomProb)/12*(getRealRank(selectedCard)-1));
-
-		} else {
-
-			Hand h = Hand.makeBestHand(base, holeCards);
-
-			int[] prob = {10,50,90,95,97,98,99,100};
-
-			if(h.getValue()>prob.length){
-				return prob[prob.length-1];
-			} else {
-				return prob[h.getValue()-1];
 			}
 		}
+		return equity;
 	}
 
-	private static int getRealRank(Card c){
-
-		if(c.getRank()==0){
-			// It's an ace
-			return 13;
-		} else {
-			return c.getRank();
+	// Same as evaluateHand, without the cache.
+	// byRiver: when the turn is enumerated exactly, receives the equity of every river card (see EquityCalculator.enumerate).
+	public static Equity computeEquity(CardSet base, CardSet holeCards, int numberOfPlayers, Equity[] byRiver) throws InterruptedException {
+		if (base == null) {
+			base = new CardSet();
 		}
-
+		if (base.isEmpty() && PreflopTable.covers(numberOfPlayers)) {
+			Card[] cards = holeCards.toArray();
+			return PreflopTable.lookup(cards[0], cards[1], numberOfPlayers);
+		}
+		if (base.size() >= 4 &&
+			EquityCalculator.enumerationSize(holeCards, base, numberOfPlayers) <= EXACT_SHOWDOWN_LIMIT) {
+			return getCalculator().enumerate(holeCards, base, numberOfPlayers, byRiver);
+		}
+		return getCalculator().simulate(holeCards, base, numberOfPlayers, ACCURACY, TIME_BUDGET_MILLIS);
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,137 @@
+/*
+ * wePoker: Play poker with your friends, wherever you are!
+ * Copyright (C) 2012, The AmbientTalk team.
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package edu.vub.at.nfcpoker.ui.tools;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import edu.vub.at.nfcpoker.Card;
+import edu.vub.at.nfcpoker.CardSet;
+import edu.vub.at.nfcpoker.Equity;
+
+// Win prediction for the hole cards of one hand.
+// The cards and player count are updated from the network thread; the equity is
+// computed on a background thread and handed to the listener when it is ready.
+// When the turn could be enumerated exactly, the session keeps the equity of every
+// river card, so the river prediction is a lookup. Other repeated boards and player
+// counts are answered by the CardScoreUtility cache.
+public class PredictionSession {
+
+	public interface PredictionListener {
+		void predictionUpdated(PredictionSession session, Equity equity);
+	}
+
+	private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "wePoker - Prediction");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	private final CardSet holeCards;
+	private final PredictionListener listener;
+
+	// Guarded by this
+	private final CardSet board = new CardSet();
+	private int players;
+	private int generation;
+	private boolean cancelled;
+
+	// Only used on the executor thread
+	private long turnBoard;          // board for which byRiver was enumerated
+	private int turnPlayers;
+	private Equity[] byRiver;
+
+	public PredictionSession(Card card1, Card card2, PredictionListener listener) {
+		this.holeCards = CardSet.of(card1, card2);
+		this.listener = listener;
+	}
+
+	// players includes ourselves
+	public synchronized void setPlayers(int players) {
+		if (this.players == players) return;
+		this.players = players;
+		refresh();
+	}
+
+	public synchronized void addBoardCards(Card[] cards) {
+		board.addAll(cards);
+		refresh();
+	}
+
+	public synchronized void cancel() {
+		cancelled = true;
+	}
+
+	private synchronized boolean isCurrent(int generation) {
+		return !cancelled && this.generation == generation;
+	}
+
+	// Only the latest request is computed, older ones still queued are skipped.
+	private void refresh() {
+		if (players < 2 || cancelled) return;
+		final int myGeneration = ++generation;
+		final long boardBits = board.getBits();
+		final int myPlayers = players;
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (!isCurrent(myGeneration)) return;
+				Equity equity;
+				try {
+					equity = compute(boardBits, myPlayers);
+				} catch (InterruptedException e) {
+					return;
+				}
+				if (isCurrent(myGeneration))
+					listener.predictionUpdated(PredictionSession.this, equity);
+			}
+		});
+	}
+
+	private Equity compute(long boardBits, int players) throws InterruptedException {
+		CardSet board = new CardSet(boardBits);
+		if (board.size() == 5 && byRiver != null && players == turnPlayers && (boardBits & turnBoard) == turnBoard) {
+			Equity equity = byRiver[Long.numberOfTrailingZeros(boardBits & ~turnBoard)];
+			if (equity != null)
+				return equity;
+		}
+		if (board.size() != 4)
+			return CardScoreUtility.evaluateHand(board, holeCards, players);
+
+		Equity[] rivers = new Equity[64];
+		Equity equity = CardScoreUtility.evaluateHand(board, holeCards, players, rivers);
+		if (hasAny(rivers)) {
+			byRiver = rivers;
+			turnBoard = boardBits;
+			turnPlayers = players;
+		}
+		return equity;
+	}
+
+	private static boolean hasAny(Equity[] rivers) {
+		for (Equity e : rivers)
+			if (e != null) return true;
+		return false;
+	}
+}
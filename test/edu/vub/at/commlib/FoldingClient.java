@@ -1,53 +1,107 @@
 package edu.vub.at.commlib;
 
 import java.io.IOException;
+import java.util.Arrays;
 
+import com.esotericsoftware.kryonet.Client;
 import com.esotericsoftware.kryonet.Connection;
 import com.esotericsoftware.kryonet.Listener;
 
 import edu.vub.at.nfcpoker.Card;
 import edu.vub.at.nfcpoker.PokerGameState;
+import edu.vub.at.nfcpoker.comm.GameServer;
+import edu.vub.at.nfcpoker.comm.Message;
 import edu.vub.at.nfcpoker.comm.Message.ClientAction;
 import edu.vub.at.nfcpoker.comm.Message.ClientActionType;
 import edu.vub.at.nfcpoker.comm.Message.FutureMessage;
 import edu.vub.at.nfcpoker.comm.Message.ReceiveHoleCardsMessage;
 import edu.vub.at.nfcpoker.comm.Message.ReceivePublicCards;
 import edu.vub.at.nfcpoker.comm.Message.RequestClientActionFutureMessage;
+import edu.vub.at.nfcpoker.comm.Message.RoundWinnersDeclarationMessage;
 import edu.vub.at.nfcpoker.comm.Message.SetClientParameterMessage;
 import edu.vub.at.nfcpoker.comm.Message.SetIDMessage;
+import edu.vub.at.nfcpoker.comm.Message.StateChangeMessage;
+import edu.vub.at.nfcpoker.comm.Message.TableUpdateMessage;
 import edu.vub.at.nfcpoker.settings.Settings;
+import edu.vub.at.nfcpoker.ui.ServerViewInterface;
 
+// A client that joins a table and folds whenever it is asked to act.
+// The load and reconnect harnesses use Player and startServer() for their clients and server.
 public class FoldingClient {
 
-	public static Connection serverConnection;
-	public static int clientId;
-	
+	// Joins tableId with a stack of 2000 once the server hands out an ID, and answers
+	// every action request with act(). Subclasses can answer differently.
+	public static class Player extends Listener {
+		protected final String name;
+		protected final int avatar;
+		protected final int tableId;
+		protected volatile int clientId = -1;
+
+		public Player(String name, int avatar, int tableId) {
+			this.name = name;
+			this.avatar = avatar;
+			this.tableId = tableId;
+		}
+
+		@Override
+		public void received(Connection c, Object m) {
+			if (m instanceof SetIDMessage) {
+				clientId = ((SetIDMessage) m).id;
+				c.sendTCP(new SetClientParameterMessage(clientId, false, name, avatar, 2000, tableId));
+			}
+			if (m instanceof RequestClientActionFutureMessage) {
+				RequestClientActionFutureMessage rcafm = (RequestClientActionFutureMessage) m;
+				ClientAction action = act(rcafm);
+				if (action != null)
+					c.sendTCP(new FutureMessage(rcafm.futureId, action));
+			}
+		}
+
+		// The answer to a request, or null to leave it unanswered
+		protected ClientAction act(RequestClientActionFutureMessage request) {
+			return new ClientAction(ClientActionType.Fold);
+		}
+	}
+
+	// A folding player on a local server
+	public static Client connect(int tableId) throws IOException {
+		return connect(new Player("load", 0, tableId));
+	}
+
+	public static Client connect(Listener listener) throws IOException {
+		return CommLibConnectionInfo.connect("127.0.0.1", CommLib.SERVER_PORT, listener);
+	}
+
+	// Starts a server on localhost and gives it a second to start listening
+	public static GameServer startServer() throws InterruptedException {
+		GameServer server = new GameServer(ServerViewInterface.ignore, true, "127.0.0.1", null);
+		server.start();
+		Thread.sleep(1000);
+		return server;
+	}
+
 	public static void main(String[] args) {
 		try {
 			String ipAddress = "127.0.0.1";
 			if (args.length > 0) ipAddress = args[0];
-			CommLibConnectionInfo.connect(ipAddress, CommLib.SERVER_PORT, new Listener() {
-				@Override
-				public void connected(Connection c) {
-					super.connected(c);
-					serverConnection = c;
-				}
-				
+			CommLibConnectionInfo.connect(ipAddress, CommLib.SERVER_PORT, new Player(Settings.nickname, Settings.avatar, GameServer.DEFAULT_TABLE) {
 				@Override
 				public void received(Connection c, Object m) {
-					super.received(c, m);
-					
+					if (m instanceof TableUpdateMessage) {
+						// Everything a table event broadcasts, in order
+						for (Message update : ((TableUpdateMessage) m).updates)
+							handle(c, update);
+					} else {
+						handle(c, m);
+					}
+				}
+
+				private void handle(Connection c, Object m) {
 					System.out.println("Received message " + m.toString());
+					super.received(c, m);
 
-					if (m instanceof SetIDMessage) {
-						final SetIDMessage sidm = (SetIDMessage) m;
-						clientId = sidm.id;
-						SetClientParameterMessage pm = new SetClientParameterMessage(clientId, false, Settings.nickname, Settings.avatar, 2000);
-						serverConnection.sendTCP(pm);
-					}
-					
-					if (m instanceof PokerGameState) {
-						PokerGameState newGameState = (PokerGameState) m;
+					if (m instanceof StateChangeMessage) {
+						PokerGameState newGameState = ((StateChangeMessage) m).newState;
 						switch (newGameState) {
 			            	case STOPPED:
 			            		System.out.println("Game state changed to STOPPED");
@@ -88,11 +142,10 @@ public class FoldingClient {
 						System.out.print("Received hand cards: " + newHoleCards.toString());
 					}
 					
-					if (m instanceof RequestClientActionFutureMessage) {
-						RequestClientActionFutureMessage rcafm = (RequestClientActionFutureMessage) m;
-						c.sendTCP(new FutureMessage(rcafm.futureId, new ClientAction(ClientActionType.Fold)));
+					if (m instanceof RoundWinnersDeclarationMessage) {
+						RoundWinnersDeclarationMessage rwdm = (RoundWinnersDeclarationMessage) m;
+						System.out.println("Winners: " + Arrays.toString(rwdm.winnerIds) + ", we got " + rwdm.getPayout(clientId));
 					}
-						
 				}
 			});
 			while (true) {
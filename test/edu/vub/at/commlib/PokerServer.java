@@ -1,18 +1,28 @@
 package edu.vub.at.commlib;
 
+import java.io.File;
+import java.io.IOException;
+
+import edu.vub.at.nfcpoker.HandEvaluators;
+import edu.vub.at.nfcpoker.SevenCardHandEvaluator;
 import edu.vub.at.nfcpoker.comm.GameServer;
 import edu.vub.at.nfcpoker.ui.ServerViewInterface;
 
 public class PokerServer {
-	public static void main(String[] args) {
+	public static void main(String[] args) throws IOException {
 		String ipAddress = "127.0.0.1";
 		if (args.length > 0) ipAddress = args[0];
 		
+		// A dedicated server has room for every hand evaluator, select() keeps the fastest.
+		HandEvaluators.setDefault(HandEvaluators.select(Runtime.getRuntime().maxMemory(),
+				new File(System.getProperty("java.io.tmpdir"), SevenCardHandEvaluator.FILE_NAME)));
+		
 		GameServer cps = new GameServer(ServerViewInterface.ignore, true, ipAddress, ipAddress);
 		cps.start();
 		while (true) {
-			try { Thread.sleep(100000);
+			try { Thread.sleep(60000);
 			} catch (InterruptedException e) { }
+			System.out.println(cps.getMetrics());
 		}
 	}
 }
@@ -0,0 +1,106 @@
+package edu.vub.at.commlib;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.esotericsoftware.kryonet.Client;
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.Listener;
+
+import edu.vub.at.nfcpoker.comm.GameServer;
+import edu.vub.at.nfcpoker.comm.Message;
+import edu.vub.at.nfcpoker.comm.Message.ClientAction;
+import edu.vub.at.nfcpoker.comm.Message.ClientActionMessage;
+import edu.vub.at.nfcpoker.comm.Message.ClientActionType;
+import edu.vub.at.nfcpoker.comm.Message.FutureMessage;
+import edu.vub.at.nfcpoker.comm.Message.RequestClientActionFutureMessage;
+import edu.vub.at.nfcpoker.comm.Message.SetClientParameterMessage;
+import edu.vub.at.nfcpoker.comm.Message.SetIDMessage;
+import edu.vub.at.nfcpoker.comm.Message.TableStateMessage;
+import edu.vub.at.nfcpoker.comm.Message.TableUpdateMessage;
+
+// A player is asked to act, comes back on a new connection before answering and
+// answers there. The answer must be applied, not replaced by a time out.
+// usage: ReconnectCheck
+public class ReconnectCheck {
+	private static final int TABLE = 1;
+	private static final long ACTION_TIMEOUT = 3000;
+
+	static volatile int playerId = -1;
+	static volatile ClientActionMessage applied;
+	static final CountDownLatch asked = new CountDownLatch(1);
+	static final CountDownLatch done = new CountDownLatch(1);
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		GameServer server = FoldingClient.startServer();
+		server.getTable(TABLE).setActionTimeout(ACTION_TIMEOUT, 0);
+
+		// Goes all in whenever asked, so the player has to answer
+		Client opponent = FoldingClient.connect(new FoldingClient.Player("opponent", 0, TABLE) {
+			@Override
+			protected ClientAction act(RequestClientActionFutureMessage request) {
+				return new ClientAction(ClientActionType.AllIn, 0, 2000);
+			}
+		});
+
+		// Registers, then stays silent when asked
+		Client first = FoldingClient.connect(new FoldingClient.Player("player", 0, TABLE) {
+			@Override
+			protected ClientAction act(RequestClientActionFutureMessage request) {
+				playerId = clientId;
+				asked.countDown();
+				return null;
+			}
+		});
+
+		if (!asked.await(10, TimeUnit.SECONDS)) {
+			fail("the player was never asked to act");
+		}
+
+		// The same player on a new connection, answering the question from the table state
+		Client second = FoldingClient.connect(new Listener() {
+			@Override
+			public void received(Connection c, Object m) {
+				if (m instanceof SetIDMessage) {
+					c.sendTCP(new SetClientParameterMessage(playerId, true, "player", 0, 2000, TABLE));
+				}
+				if (m instanceof TableStateMessage) {
+					TableStateMessage tsm = (TableStateMessage) m;
+					if (tsm.futureId == 0) {
+						fail("the table state does not ask for an action");
+					}
+					c.sendTCP(new FutureMessage(tsm.futureId, new ClientAction(ClientActionType.Fold)));
+				}
+				if (m instanceof TableUpdateMessage) {
+					for (Message update : ((TableUpdateMessage) m).updates) {
+						if (update instanceof ClientActionMessage && ((ClientActionMessage) update).userId == playerId) {
+							applied = (ClientActionMessage) update;
+							done.countDown();
+						}
+					}
+				}
+			}
+		});
+		if (!done.await(ACTION_TIMEOUT * 2, TimeUnit.MILLISECONDS)) {
+			fail("no action of the player was applied");
+		}
+		if (applied.action.timedOut) {
+			fail("the player timed out: " + applied);
+		}
+		// Only now the old connection closes, it must not take the player along
+		first.stop();
+		Thread.sleep(500);
+		System.out.println("ok: " + applied);
+		System.out.println(server.getMetrics());
+		second.stop();
+		opponent.stop();
+		server.stop();
+		System.exit(0);
+	}
+
+	static void fail(String why) {
+		System.out.println("FAILED: " + why);
+		System.exit(1);
+	}
+}
@@ -0,0 +1,99 @@
+package edu.vub.at.commlib;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.esotericsoftware.kryonet.Client;
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.Listener;
+
+import edu.vub.at.nfcpoker.comm.GameServer;
+import edu.vub.at.nfcpoker.comm.Message;
+import edu.vub.at.nfcpoker.comm.Message.ClientAction;
+import edu.vub.at.nfcpoker.comm.Message.ClientActionMessage;
+import edu.vub.at.nfcpoker.comm.Message.RequestClientActionFutureMessage;
+import edu.vub.at.nfcpoker.comm.Message.SetIDMessage;
+import edu.vub.at.nfcpoker.comm.Message.SpectateMessage;
+import edu.vub.at.nfcpoker.comm.Message.TableUpdateMessage;
+
+// One table of folding players watched by many spectators, some of which read slowly.
+// Prints how long players wait between answering and seeing their action come back.
+// usage: SpectatorLoad [spectators] [slow spectators] [seconds]
+public class SpectatorLoad {
+	private static final int PLAYERS = 4;
+
+	private static long samples;
+	private static long totalNanos;
+	private static long maxNanos;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int spectators = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int slow = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+		GameServer server = FoldingClient.startServer();
+		List<Client> clients = new ArrayList<Client>();
+		for (int s = 0; s < spectators; s++) {
+			final boolean isSlow = s < slow;
+			clients.add(FoldingClient.connect(new Listener() {
+				@Override
+				public void received(Connection c, Object m) {
+					if (m instanceof SetIDMessage) {
+						c.sendTCP(new SpectateMessage(GameServer.DEFAULT_TABLE));
+					}
+					if (isSlow && m instanceof Message) {
+						try {
+							Thread.sleep(200);
+						} catch (InterruptedException e) {
+						}
+					}
+				}
+			}));
+		}
+		for (int p = 0; p < PLAYERS; p++) {
+			clients.add(FoldingClient.connect(new FoldingClient.Player("player", 0, GameServer.DEFAULT_TABLE) {
+				long answered;
+
+				@Override
+				protected ClientAction act(RequestClientActionFutureMessage request) {
+					answered = System.nanoTime();
+					return super.act(request);
+				}
+
+				@Override
+				public void received(Connection c, Object m) {
+					super.received(c, m);
+					if (m instanceof TableUpdateMessage && answered != 0) {
+						for (Message u : ((TableUpdateMessage) m).updates) {
+							if (u instanceof ClientActionMessage && ((ClientActionMessage) u).userId == clientId) {
+								record(System.nanoTime() - answered);
+								answered = 0;
+							}
+						}
+					}
+				}
+			}));
+		}
+
+		for (int s = 0; s < seconds; s += 5) {
+			Thread.sleep(5000);
+			System.out.println(server.getMetrics());
+			synchronized (SpectatorLoad.class) {
+				if (samples > 0)
+					System.out.println("action round trip: " + totalNanos / samples / 1000 + " us average, "
+							+ maxNanos / 1000 + " us max over " + samples + " actions");
+			}
+		}
+		for (Client c : clients)
+			c.stop();
+		server.stop();
+		System.exit(0);
+	}
+
+	private static synchronized void record(long nanos) {
+		samples++;
+		totalNanos += nanos;
+		maxNanos = Math.max(maxNanos, nanos);
+	}
+}
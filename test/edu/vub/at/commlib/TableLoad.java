@@ -0,0 +1,37 @@
+package edu.vub.at.commlib;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.esotericsoftware.kryonet.Client;
+
+import edu.vub.at.nfcpoker.comm.GameServer;
+
+// Starts a server on localhost and fills it with folding clients, spread over many tables.
+// usage: TableLoad [tables] [players per table] [seconds]
+public class TableLoad {
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int tables = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		int players = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+		GameServer server = FoldingClient.startServer();
+		List<Client> clients = new ArrayList<Client>();
+		for (int t = 0; t < tables; t++) {
+			for (int p = 0; p < players; p++) {
+				clients.add(FoldingClient.connect(t));
+			}
+		}
+
+		for (int s = 0; s < seconds; s += 5) {
+			Thread.sleep(5000);
+			System.out.println(server.getMetrics());
+			System.out.println(Thread.activeCount() + " threads (" + clients.size() + " of them are client connections)");
+		}
+		for (Client c : clients)
+			c.stop();
+		server.stop();
+		System.exit(0);
+	}
+}
@@ -0,0 +1,85 @@
+package edu.vub.at.nfcpoker;
+
+import java.io.File;
+import java.io.IOException;
+
+// Cross-checks all HandEvaluator implementations against each other on every
+// hand of 5, 6 and 7 cards, and their prepared boards on random boards with every
+// pair of hole cards. Exits with status 1 on the first disagreement.
+// Usage: HandEvaluatorCheck [7-card table file, default in java.io.tmpdir]
+public class HandEvaluatorCheck {
+	private static HandEvaluator[] evaluators;
+	private static long[] bits = new long[52];
+	private static long hands;
+	private static final int BOARDS = 2000;
+
+	public static void main(String[] args) throws IOException {
+		File table = args.length > 0 ? new File(args[0])
+				: new File(System.getProperty("java.io.tmpdir"), SevenCardHandEvaluator.FILE_NAME);
+		evaluators = new HandEvaluator[] {
+				new BitHandEvaluator(), new FiveCardHandEvaluator(), SevenCardHandEvaluator.open(table) };
+		for (int i = 0; i < 52; i++)
+			bits[i] = CardSet.bit(Card.get(i));
+
+		for (int size = 5; size <= 7; size++) {
+			long start = System.currentTimeMillis();
+			hands = 0;
+			check(0, size, 0);
+			System.out.println(size + " cards: " + hands + " hands agree ("
+					+ (System.currentTimeMillis() - start) + " ms)");
+		}
+		checkPreparedBoards();
+	}
+
+	private static void checkPreparedBoards() {
+		long start = System.currentTimeMillis();
+		hands = 0;
+		Deck deck = new Deck(new CardSet(), new XorShiftRandom(BOARDS));
+		for (int n = 0; n < BOARDS; n++) {
+			deck.shuffle();
+			long board = 0;
+			for (int c = 0; c < 5; c++)
+				board |= CardSet.bitOfIndex(deck.drawIndex());
+			HandEvaluator.PreparedBoard[] prepared = new HandEvaluator.PreparedBoard[evaluators.length];
+			for (int e = 0; e < evaluators.length; e++)
+				prepared[e] = evaluators[e].prepareBoard(board);
+			for (int i = 0; i < 52; i++) {
+				for (int j = i + 1; j < 52; j++) {
+					long hole = bits[i] | bits[j];
+					if ((hole & board) != 0)
+						continue;
+					int expected = evaluators[0].evaluate(board | hole);
+					for (int e = 0; e < evaluators.length; e++) {
+						int strength = prepared[e].evaluate(hole);
+						if (strength != expected) {
+							System.out.println(new CardSet(board | hole) + ": " + evaluators[0] + " says " + Hand.describe(expected)
+									+ ", prepared " + evaluators[e] + " says " + Hand.describe(strength));
+							System.exit(1);
+						}
+					}
+					hands++;
+				}
+			}
+		}
+		System.out.println("prepared boards: " + hands + " hands agree ("
+				+ (System.currentTimeMillis() - start) + " ms)");
+	}
+
+	private static void check(int from, int left, long cards) {
+		if (left == 0) {
+			int expected = evaluators[0].evaluate(cards);
+			for (int e = 1; e < evaluators.length; e++) {
+				int strength = evaluators[e].evaluate(cards);
+				if (strength != expected) {
+					System.out.println(new CardSet(cards) + ": " + evaluators[0] + " says " + Hand.describe(expected)
+							+ ", " + evaluators[e] + " says " + Hand.describe(strength));
+					System.exit(1);
+				}
+			}
+			hands++;
+			return;
+		}
+		for (int i = from; i <= 52 - left; i++)
+			check(i + 1, left - 1, cards | bits[i]);
+	}
+}
@@ -0,0 +1,116 @@
+package edu.vub.at.nfcpoker;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Output;
+
+import edu.vub.at.nfcpoker.comm.CardSerializer;
+import edu.vub.at.nfcpoker.comm.Message;
+import edu.vub.at.nfcpoker.comm.Message.TableUpdateMessage;
+import edu.vub.at.nfcpoker.comm.Protocol;
+import edu.vub.at.nfcpoker.simulation.Bot;
+import edu.vub.at.nfcpoker.simulation.BotStrategy;
+import edu.vub.at.nfcpoker.simulation.HandStrengthStrategy;
+import edu.vub.at.nfcpoker.simulation.RandomStrategy;
+import edu.vub.at.nfcpoker.simulation.SimulatedTable;
+
+// Plays hands with bots and reports the bytes Kryo writes for what the table sends them,
+// with the classes left unregistered (class names on the wire) and with Protocol.
+// usage: MessageSizes [hands] [players]
+public class MessageSizes {
+
+	// Bytes written per message class
+	static class Sizes {
+		final Kryo kryo;
+		final Output output = new Output(256, -1);
+		final Map<String, long[]> perClass = new TreeMap<String, long[]>();
+		long messages, bytes;
+
+		Sizes(Kryo kryo) {
+			this.kryo = kryo;
+		}
+
+		void count(Object m) {
+			int size = measure(m, m.getClass().getSimpleName());
+			messages++;
+			bytes += size;
+			if (m instanceof TableUpdateMessage) {
+				// What the updates would take on their own
+				for (Message update : ((TableUpdateMessage) m).updates)
+					measure(update, "TableUpdateMessage > " + update.getClass().getSimpleName());
+			}
+		}
+
+		int measure(Object m, String name) {
+			output.clear();
+			kryo.writeClassAndObject(output, m);
+			long[] c = perClass.get(name);
+			if (c == null)
+				perClass.put(name, c = new long[2]);
+			c[0]++;
+			c[1] += output.position();
+			return output.position();
+		}
+	}
+
+	static Sizes sizes;
+
+	static class CountingTable extends SimulatedTable {
+		CountingTable(BotStrategy[] strategies, long hands) {
+			super(strategies, hands);
+		}
+
+		@Override
+		protected Bot newBot(int seat, BotStrategy strategy) {
+			return new Bot(seat, strategy) {
+				// The bot hands the updates of a frame to sendTCP one by one
+				private boolean inFrame;
+
+				@Override
+				public int sendTCP(Object m) {
+					if (inFrame)
+						return super.sendTCP(m);
+					sizes.count(m);
+					inFrame = true;
+					try {
+						return super.sendTCP(m);
+					} finally {
+						inFrame = false;
+					}
+				}
+			};
+		}
+	}
+
+	public static void main(String[] args) {
+		long hands = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+		int players = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+
+		Kryo unregistered = new Kryo();
+		unregistered.setRegistrationRequired(false);
+		unregistered.register(Card.class, new CardSerializer());
+		report("unregistered", unregistered, hands, players);
+
+		Kryo registered = new Kryo();
+		Protocol.register(registered);
+		report("Protocol", registered, hands, players);
+	}
+
+	static void report(String title, Kryo kryo, long hands, int players) {
+		BotStrategy[] seats = new BotStrategy[players];
+		for (int i = 0; i < players; i++) {
+			seats[i] = i % 2 == 0 ? new HandStrengthStrategy() : new RandomStrategy(i);
+		}
+		sizes = new Sizes(kryo);
+		SimulatedTable table = new CountingTable(seats, hands);
+		table.run();
+		System.out.println(title + ": " + sizes.messages + " messages, " + sizes.bytes + " bytes, " +
+				sizes.bytes / table.getHands() + " bytes per hand");
+		for (Map.Entry<String, long[]> e : sizes.perClass.entrySet()) {
+			long[] c = e.getValue();
+			System.out.println(String.format("  %-52s %8d messages, %5d bytes on average", e.getKey(), c[0], c[1] / c[0]));
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package edu.vub.at.nfcpoker;
+
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+// Regenerates src/edu/vub/at/nfcpoker/preflop_equity.bin, see PreflopTable.
+// Usage: PreflopTableGenerator [output file] [accuracy]
+public class PreflopTableGenerator {
+	private static final long NO_TIME_LIMIT = 24 * 3600 * 1000L;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String output = "src/edu/vub/at/nfcpoker/" + PreflopTable.RESOURCE;
+		double accuracy = 0.001;
+		if (args.length > 0) output = args[0];
+		if (args.length > 1) accuracy = Double.parseDouble(args[1]);
+
+		EquityCalculator calculator = new EquityCalculator();
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(output));
+		try {
+			out.writeInt(PreflopTable.MAGIC);
+			out.writeInt(PreflopTable.CLASSES);
+			out.writeInt(PreflopTable.MAX_OPPONENTS);
+			for (int i = 0; i < PreflopTable.CLASSES; i++) {
+				CardSet hole = representative(i);
+				for (int opponents = 1; opponents <= PreflopTable.MAX_OPPONENTS; opponents++) {
+					Equity e = calculator.simulate(hole, new CardSet(), opponents + 1, accuracy, NO_TIME_LIMIT);
+					out.writeChar(scale(e.win));
+					out.writeChar(scale(e.tie));
+					out.writeChar(scale(e.tieShare));
+					if (opponents == 1)
+						System.out.println(hole + ": " + e);
+				}
+			}
+		} finally {
+			out.close();
+			calculator.shutdown();
+		}
+	}
+
+	// Two cards of class i: hearts and spades for pairs and offsuit hands, two hearts for suited ones.
+	private static CardSet representative(int i) {
+		int row = i / 13, col = i % 13;
+		int high = Math.max(row, col), low = Math.min(row, col);
+		int otherSuit = row > col ? 0 : 1;
+		return CardSet.of(Card.get(0, HandRank.cardRank(high + 2)), Card.get(otherSuit, HandRank.cardRank(low + 2)));
+	}
+
+	private static char scale(double fraction) {
+		return (char) Math.round(fraction * PreflopTable.SCALE);
+	}
+}
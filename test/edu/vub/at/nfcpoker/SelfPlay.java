@@ -0,0 +1,36 @@
+package edu.vub.at.nfcpoker;
+
+import edu.vub.at.nfcpoker.simulation.BotStrategy;
+import edu.vub.at.nfcpoker.simulation.HandStrengthStrategy;
+import edu.vub.at.nfcpoker.simulation.RandomStrategy;
+import edu.vub.at.nfcpoker.simulation.Simulator;
+
+// Headless self-play: bots play the real game logic against each other.
+// usage: SelfPlay [tables] [hands per table] [players per table]
+public class SelfPlay {
+	public static void main(String[] args) throws InterruptedException {
+		int tables = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		long hands = args.length > 1 ? Long.parseLong(args[1]) : 10000;
+		final int players = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+
+		Simulator.Lineup lineup = new Simulator.Lineup() {
+			@Override
+			public BotStrategy[] seat(int table) {
+				BotStrategy[] seats = new BotStrategy[players];
+				for (int i = 0; i < players; i++) {
+					switch (i % 3) {
+					case 0: seats[i] = new HandStrengthStrategy(); break;
+					case 1: seats[i] = new RandomStrategy(table * 31 + i); break;
+					default: seats[i] = BotStrategy.CALLING_STATION; break;
+					}
+				}
+				return seats;
+			}
+		};
+
+		Simulator simulator = new Simulator();
+		// warm up
+		simulator.run(tables, Math.min(hands, 1000), lineup);
+		System.out.println(simulator.run(tables, hands, lineup));
+	}
+}